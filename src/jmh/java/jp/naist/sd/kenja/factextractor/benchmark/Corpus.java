@@ -0,0 +1,143 @@
+package jp.naist.sd.kenja.factextractor.benchmark;
+
+/**
+ * Source files used by benchmarks.
+ *
+ * Sources are generated so that benchmarks do not depend on files outside of the repository. Each
+ * entry represents a kind of file which is found in real histories.
+ */
+public enum Corpus {
+  /**
+   * a small class with a few members.
+   */
+  SMALL {
+    @Override
+    public String generate() {
+      StringBuilder src = new StringBuilder();
+      src.append("package jp.naist.sd.kenja.sample;\n\n");
+      src.append("public class Small {\n");
+      src.append("  private int count;\n\n");
+      appendMethod(src, "count", "int", 0);
+      src.append("}\n");
+      return src.toString();
+    }
+  },
+
+  /**
+   * a class of an ordinary size with fields, constructors, overloads and an inner class.
+   */
+  TYPICAL {
+    @Override
+    public String generate() {
+      StringBuilder src = new StringBuilder();
+      src.append("package jp.naist.sd.kenja.sample;\n\n");
+      src.append("import java.util.List;\n\n");
+      src.append("public class Typical extends Base {\n");
+      for (int i = 0; i < 10; i++) {
+        src.append("  private List<String> field").append(i).append(";\n");
+      }
+      src.append("\n  public Typical() {\n    super();\n  }\n\n");
+      for (int i = 0; i < 30; i++) {
+        appendMethod(src, "method" + (i % 20), "int", i % 3);
+      }
+      src.append("  public static class Inner {\n");
+      appendMethod(src, "inner", "String", 1);
+      src.append("  }\n");
+      src.append("}\n");
+      return src.toString();
+    }
+  },
+
+  /**
+   * a generated class with thousands of fields and methods.
+   */
+  HUGE_CLASS {
+    @Override
+    public String generate() {
+      StringBuilder src = new StringBuilder();
+      src.append("package jp.naist.sd.kenja.sample;\n\n");
+      src.append("public class Generated {\n");
+      for (int i = 0; i < 2000; i++) {
+        src.append("  private long field").append(i).append(";\n");
+      }
+      for (int i = 0; i < 5000; i++) {
+        appendMethod(src, "method" + i, "long", 2);
+      }
+      src.append("}\n");
+      return src.toString();
+    }
+  },
+
+  /**
+   * a class with thousands of overloads of the same method name.
+   */
+  OVERLOADS {
+    @Override
+    public String generate() {
+      StringBuilder src = new StringBuilder();
+      src.append("package jp.naist.sd.kenja.sample;\n\n");
+      src.append("public class Overloads {\n");
+      for (int i = 0; i < 2000; i++) {
+        src.append("  public int apply(Type").append(i).append(" value) {\n");
+        src.append("    return value.hashCode() + ").append(i).append(";\n");
+        src.append("  }\n\n");
+      }
+      src.append("}\n");
+      return src.toString();
+    }
+  },
+
+  /**
+   * deeply nested inner classes.
+   */
+  DEEP_NESTING {
+    @Override
+    public String generate() {
+      StringBuilder src = new StringBuilder();
+      src.append("package jp.naist.sd.kenja.sample;\n\n");
+      int depth = 200;
+      for (int i = 0; i < depth; i++) {
+        if (i == 0) {
+          src.append("public class Nest0 {\n");
+        } else {
+          src.append("public static class Nest").append(i).append(" {\n");
+        }
+        src.append("  private int field;\n");
+        appendMethod(src, "method", "int", 1);
+      }
+      for (int i = 0; i < depth; i++) {
+        src.append("}\n");
+      }
+      return src.toString();
+    }
+  };
+
+  /**
+   * Generate the source code.
+   *
+   * @return source code
+   */
+  public abstract String generate();
+
+  private static void appendMethod(StringBuilder src, String name, String type,
+      int numParameters) {
+    src.append("  public ").append(type).append(" ").append(name).append("(");
+    for (int i = 0; i < numParameters; i++) {
+      if (i > 0) {
+        src.append(", ");
+      }
+      src.append(type).append(" arg").append(i);
+    }
+    src.append(") {\n");
+    src.append("    ").append(type).append(" result = 0;\n");
+    src.append("    for (int i = 0; i < 10; i++) {\n");
+    src.append("      if (i % 2 == 0) {\n");
+    src.append("        result += i;\n");
+    src.append("      } else {\n");
+    src.append("        result -= i;\n");
+    src.append("      }\n");
+    src.append("    }\n");
+    src.append("    return result;\n");
+    src.append("  }\n\n");
+  }
+}
@@ -0,0 +1,49 @@
+package jp.naist.sd.kenja.factextractor.benchmark;
+
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A source file of the corpus and results of each stage of the pipeline for it.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+  @Param({"SMALL", "TYPICAL", "HUGE_CLASS", "OVERLOADS", "DEEP_NESTING"})
+  public Corpus corpus;
+
+  public char[] src;
+
+  public CompilationUnit unit;
+
+  public Tree tree;
+
+  @Setup
+  public void setUp() {
+    src = corpus.generate().toCharArray();
+    unit = parse(src);
+    tree = new ASTCompilation(unit, new Tree("")).getTree();
+  }
+
+  /**
+   * Parse source code by a new parser with default settings, as GitTreeCreator did before parsers
+   * were reused.
+   *
+   * @param src
+   *          source code
+   * @return parsed compilation unit
+   */
+  public static CompilationUnit parse(char[] src) {
+    ASTParser parser = ASTParser.newParser(AST.JLS4);
+    parser.setSource(src);
+    return (CompilationUnit) parser.createAST(new NullProgressMonitor());
+  }
+}
@@ -0,0 +1,92 @@
+package jp.naist.sd.kenja.factextractor.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jp.naist.sd.kenja.factextractor.FileFormatTreeWriter;
+import jp.naist.sd.kenja.factextractor.ParserProfile;
+import jp.naist.sd.kenja.factextractor.SourceParser;
+import jp.naist.sd.kenja.factextractor.TextFormatTreeWriter;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Benchmarks of each stage of parse, Historage tree construction and writing.
+ *
+ * Run with "-prof gc" to see allocation rates of each stage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+  private File outputDir;
+
+  private SourceParser parser;
+
+  @Setup
+  public void setUp() {
+    outputDir = Files.createTempDir();
+    parser = new SourceParser(ParserProfile.forName(ParserProfile.DEFAULT_NAME));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(outputDir);
+  }
+
+  @Benchmark
+  public CompilationUnit parse(CorpusState state) {
+    return CorpusState.parse(state.src);
+  }
+
+  @Benchmark
+  public CompilationUnit parseReusingParser(CorpusState state) {
+    return parser.parse(state.src, false);
+  }
+
+  @Benchmark
+  public Tree buildTree(CorpusState state) {
+    return new ASTCompilation(state.unit, new Tree("")).getTree();
+  }
+
+  @Benchmark
+  public File writeTextFormat(CorpusState state) throws IOException {
+    File outputFile = new File(outputDir, "text");
+    // the writer appends, so each invocation starts from an empty file.
+    outputFile.delete();
+    new TextFormatTreeWriter(outputFile).writeTree(state.tree);
+    return outputFile;
+  }
+
+  @Benchmark
+  public File writeFileFormat(CorpusState state) throws IOException {
+    File baseDir = new File(outputDir, "file");
+    new FileFormatTreeWriter(baseDir).writeTree(state.tree);
+    return baseDir;
+  }
+
+  @Benchmark
+  public Tree parseAndBuildTree(CorpusState state) {
+    return new ASTCompilation(CorpusState.parse(state.src), new Tree("")).getTree();
+  }
+}
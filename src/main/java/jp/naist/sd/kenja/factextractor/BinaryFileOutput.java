@@ -0,0 +1,43 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A SyntaxTreeOutput which writes each syntax tree to a file in a directory by
+ * BinaryFormatTreeWriter.
+ */
+public class BinaryFileOutput implements SyntaxTreeOutput {
+  private File syntaxTreeDir;
+
+  private FanoutLayout layout;
+
+  public BinaryFileOutput(File syntaxTreeDir) {
+    this(syntaxTreeDir, new FanoutLayout(0));
+  }
+
+  /**
+   * Create a BinaryFileOutput which places files in a fan-out layout.
+   *
+   * @param syntaxTreeDir
+   *          syntax trees directory
+   * @param layout
+   *          layout of files in the directory
+   */
+  public BinaryFileOutput(File syntaxTreeDir, FanoutLayout layout) {
+    this.syntaxTreeDir = syntaxTreeDir;
+    this.layout = layout;
+  }
+
+  @Override
+  public long write(String name, Tree tree) throws IOException {
+    File file = layout.getFile(syntaxTreeDir, name);
+    BinaryFormatTreeWriter writer = new BinaryFormatTreeWriter(file);
+    writer.writeTree(tree);
+    return writer.getBytesWritten();
+  }
+
+  @Override
+  public void close() {
+  }
+}
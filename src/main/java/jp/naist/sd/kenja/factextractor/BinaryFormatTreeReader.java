@@ -0,0 +1,200 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A streaming reader of trees written by BinaryFormatTreeWriter.
+ *
+ * Trees are read one by one, either as Tree objects or as callbacks to a Visitor, so a stream of
+ * any size is read in constant memory by a Visitor.
+ */
+public class BinaryFormatTreeReader {
+
+  /**
+   * Callbacks of entries in the order they were written.
+   */
+  public interface Visitor {
+    public void startTree(String name) throws IOException;
+
+    /**
+     * Called for each blob.
+     *
+     * @param name
+     *          name of the blob
+     * @param body
+     *          body of the blob encoded in UTF-8
+     */
+    public void blob(String name, byte[] body) throws IOException;
+
+    public void endTree() throws IOException;
+  }
+
+  private DataInputStream in;
+
+  /**
+   * true if MAGIC is read.
+   */
+  private boolean started;
+
+  /**
+   * names read in the current tree.
+   */
+  private List<String> nameTable = new ArrayList<String>();
+
+  /**
+   * Create a BinaryFormatTreeReader. The stream is buffered by the reader.
+   *
+   * @param in
+   *          stream written by BinaryFormatTreeWriter
+   */
+  public BinaryFormatTreeReader(InputStream in) {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+  }
+
+  /**
+   * Read the next tree as callbacks to a visitor.
+   *
+   * @param visitor
+   *          visitor of entries
+   * @return false if there is no more tree
+   * @throws IOException
+   *           if the stream can not be read or is broken
+   */
+  public boolean accept(Visitor visitor) throws IOException {
+    if (!started) {
+      byte[] magic = new byte[BinaryFormatTreeWriter.MAGIC.length];
+      if (!readFully(magic)) {
+        return false;
+      }
+      if (!Arrays.equals(magic, BinaryFormatTreeWriter.MAGIC)) {
+        throw new IOException("not a binary Historage stream");
+      }
+      started = true;
+    }
+
+    int tag = in.read();
+    if (tag == -1) {
+      return false;
+    } else if (tag != BinaryFormatTreeWriter.TREE_START) {
+      throw new IOException("unexpected tag: " + tag);
+    }
+
+    nameTable.clear();
+    visitor.startTree(readName());
+    int depth = 1;
+    while (depth > 0) {
+      tag = in.readUnsignedByte();
+      if (tag == BinaryFormatTreeWriter.TREE_START) {
+        visitor.startTree(readName());
+        depth++;
+      } else if (tag == BinaryFormatTreeWriter.BLOB) {
+        String name = readName();
+        visitor.blob(name, readBytes());
+      } else if (tag == BinaryFormatTreeWriter.TREE_END) {
+        visitor.endTree();
+        depth--;
+      } else {
+        throw new IOException("unexpected tag: " + tag);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read the next tree.
+   *
+   * @return the tree, or null if there is no more tree
+   * @throws IOException
+   *           if the stream can not be read or is broken
+   */
+  public Tree readTree() throws IOException {
+    TreeBuilder builder = new TreeBuilder();
+    if (!accept(builder)) {
+      return null;
+    }
+    return builder.root;
+  }
+
+  private boolean readFully(byte[] bytes) throws IOException {
+    int first = in.read();
+    if (first == -1) {
+      return false;
+    }
+    bytes[0] = (byte) first;
+    in.readFully(bytes, 1, bytes.length - 1);
+    return true;
+  }
+
+  private String readName() throws IOException {
+    int index = readVarint();
+    if (index > 0) {
+      if (index > nameTable.size()) {
+        throw new IOException("unknown name index: " + index);
+      }
+      return nameTable.get(index - 1);
+    }
+    String name = new String(readBytes(), Charsets.UTF_8);
+    nameTable.add(name);
+    return name;
+  }
+
+  private byte[] readBytes() throws IOException {
+    byte[] bytes = new byte[readVarint()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int next = in.readUnsignedByte();
+      value |= (next & 0x7f) << shift;
+      if ((next & 0x80) == 0) {
+        if (value < 0) {
+          throw new IOException("varint out of range");
+        }
+        return value;
+      }
+    }
+    throw new IOException("varint too long");
+  }
+
+  /**
+   * A Visitor which builds a Tree.
+   */
+  private static class TreeBuilder implements Visitor {
+    private Tree root;
+
+    private LinkedList<Tree> stack = new LinkedList<Tree>();
+
+    @Override
+    public void startTree(String name) {
+      Tree tree = new Tree(name);
+      if (stack.isEmpty()) {
+        root = tree;
+      } else {
+        stack.getFirst().append(tree);
+      }
+      stack.addFirst(tree);
+    }
+
+    @Override
+    public void blob(String name, byte[] body) {
+      stack.getFirst().append(new Blob(new String(body, Charsets.UTF_8), name));
+    }
+
+    @Override
+    public void endTree() {
+      stack.removeFirst();
+    }
+  }
+}
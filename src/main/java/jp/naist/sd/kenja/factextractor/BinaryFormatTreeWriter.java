@@ -0,0 +1,177 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * A TreeWriter which writes trees in a length-prefixed binary format.
+ *
+ * <pre>
+ * stream := MAGIC tree*
+ * tree   := TREE_START name entry* TREE_END
+ * entry  := BLOB name varint(length) body | tree
+ * name   := varint(0) varint(length) name   (a new name, which is added to the name table)
+ *         | varint(index + 1)               (index of a name in the name table)
+ * </pre>
+ *
+ * Sizes are unsigned LEB128 varints, and names and bodies are encoded in UTF-8. Entries are
+ * written in the same order as TextFormatTreeWriter writes them. The name table starts empty at
+ * each tree written by writeTree, so trees appended to a file can be read one by one.
+ */
+public class BinaryFormatTreeWriter implements TreeWriter {
+  /**
+   * first bytes of a stream.
+   */
+  static final byte[] MAGIC = {'K', 'H', 'B', 1};
+
+  static final int TREE_START = 1;
+
+  static final int BLOB = 2;
+
+  static final int TREE_END = 3;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private File outputFile;
+
+  /**
+   * stream given by the caller. null if trees are written to outputFile.
+   */
+  private OutputStream target;
+
+  /**
+   * true if MAGIC is written to target.
+   */
+  private boolean targetStarted;
+
+  /**
+   * stream which is opened while a tree is written.
+   */
+  private OutputStream out;
+
+  /**
+   * indexes of names written in the current tree.
+   */
+  private Map<String, Integer> nameTable = new HashMap<String, Integer>();
+
+  private long bytesWritten;
+
+  public BinaryFormatTreeWriter(File outputFile) throws IOException {
+    this.outputFile = outputFile.getAbsoluteFile();
+    if (!this.outputFile.getParentFile().exists()) {
+      Files.createParentDirs(this.outputFile);
+    }
+  }
+
+  /**
+   * Create a BinaryFormatTreeWriter which writes trees to a stream. The stream is flushed after
+   * each tree but not closed.
+   *
+   * @param target
+   *          stream where trees are written
+   */
+  public BinaryFormatTreeWriter(OutputStream target) {
+    this.target = target;
+  }
+
+  /**
+   * Write a tree to the output file or the target stream. A root tree replaces the content of the
+   * file, and other trees are appended to it.
+   */
+  public void writeTree(Tree tree) throws IOException {
+    out = open(!tree.isRoot());
+    try {
+      nameTable.clear();
+      writeTreeContents(tree);
+      out.flush();
+    } finally {
+      if (target == null) {
+        out.close();
+      }
+      out = null;
+    }
+  }
+
+  private OutputStream open(boolean append) throws IOException {
+    if (target != null) {
+      if (!targetStarted) {
+        target.write(MAGIC);
+        bytesWritten += MAGIC.length;
+        targetStarted = true;
+      }
+      return target;
+    }
+
+    boolean started = append && outputFile.length() > 0;
+    OutputStream stream = new BufferedOutputStream(new FileOutputStream(outputFile, started),
+        BUFFER_SIZE);
+    if (!started) {
+      stream.write(MAGIC);
+      bytesWritten += MAGIC.length;
+    }
+    return stream;
+  }
+
+  private void writeTreeContents(Tree tree) throws IOException {
+    writeByte(TREE_START);
+    writeName(tree.getName());
+    for (TreeEntry entry : tree.getSortedEntries()) {
+      if (entry instanceof Blob) {
+        Blob blob = (Blob) entry;
+        writeByte(BLOB);
+        writeName(blob.getName());
+        writeBytes(blob.encode(Charsets.UTF_8));
+      } else {
+        writeTreeContents((Tree) entry);
+      }
+    }
+    writeByte(TREE_END);
+  }
+
+  private void writeName(String name) throws IOException {
+    Integer index = nameTable.get(name);
+    if (index != null) {
+      writeVarint(index + 1);
+      return;
+    }
+    nameTable.put(name, nameTable.size());
+    writeVarint(0);
+    writeBytes(name.getBytes(Charsets.UTF_8));
+  }
+
+  private void writeBytes(byte[] bytes) throws IOException {
+    writeVarint(bytes.length);
+    out.write(bytes);
+    bytesWritten += bytes.length;
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    writeByte(value);
+  }
+
+  private void writeByte(int value) throws IOException {
+    out.write(value);
+    bytesWritten++;
+  }
+
+  /**
+   * Return the number of bytes written by this writer.
+   *
+   * @return number of written bytes
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+}
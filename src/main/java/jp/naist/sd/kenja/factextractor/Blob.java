@@ -1,10 +1,39 @@
 package jp.naist.sd.kenja.factextractor;
 
-public class Blob {
-  private String body;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.base.Charsets;
+
+public class Blob implements TreeEntry {
+  private CharSequence body;
 
   private String name;
 
+  /**
+   * number of lines of body. -1 if it is not counted yet.
+   */
+  private int lineCount = -1;
+
+  /**
+   * Tree which contains this blob. It is notified when the blob is renamed.
+   */
+  private Tree parent;
+
+  /**
+   * git id of the body. null if it is not computed yet.
+   */
+  private ObjectId id;
+
+  /**
+   * true if id is computed from a body of US-ASCII characters only. Other characters are encoded
+   * to '?', so equal ids of such bodies do not mean equal bodies.
+   */
+  private boolean idExact;
+
   public Blob(String body, String name) {
     this.body = body;
     this.name = name;
@@ -16,6 +45,15 @@ public class Blob {
   }
 
   public String getBody() {
+    return body.toString();
+  }
+
+  /**
+   * Return the body without copying it.
+   *
+   * @return String or SourceSlice given by setBody
+   */
+  public CharSequence getContent() {
     return body;
   }
 
@@ -23,11 +61,179 @@ public class Blob {
     return name;
   }
 
-  public void setBody(String body) {
+  /**
+   * Set the body. A SourceSlice is referenced, not copied.
+   *
+   * @param body
+   *          body of the blob
+   */
+  public void setBody(CharSequence body) {
     this.body = body;
+    this.lineCount = -1;
+    this.id = null;
+    this.idExact = false;
+    if (parent != null) {
+      parent.invalidateId();
+    }
+  }
+
+  /**
+   * Set the body whose id is already known, such as one cached with the body. The id is not
+   * used to compare bodies, because it is not known whether it is exact.
+   *
+   * @param body
+   *          body of the blob
+   * @param id
+   *          id of the git blob object of body, or null if it is not known
+   */
+  public void setBody(CharSequence body, ObjectId id) {
+    setBody(body);
+    this.id = id;
   }
 
   public void setName(String name) {
+    String oldName = this.name;
     this.name = name;
+    if (parent != null) {
+      parent.renamed(this, oldName);
+    }
+  }
+
+  void setParent(Tree parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * Return the id of the git blob object of the body, encoded as GitObjectTreeWriter stores it.
+   * The id is computed once and kept until the body is changed.
+   *
+   * @return id of the blob
+   */
+  public ObjectId getId() {
+    if (id == null) {
+      byte[] bytes = encodeAscii();
+      idExact = bytes != null;
+      if (bytes == null) {
+        bytes = body.toString().getBytes(Charsets.US_ASCII);
+      }
+      id = GitTreeEntry.idForBlob(bytes);
+    }
+    return id;
+  }
+
+  /**
+   * Return true if the id is computed by getId from a body of US-ASCII characters only, so it
+   * differs from the ids of all other bodies.
+   *
+   * @return true if the id is computed and exact
+   */
+  public boolean hasExactId() {
+    return id != null && idExact;
+  }
+
+  /**
+   * Return the id if it is already computed.
+   *
+   * @return id of the blob, or null if it is not computed yet
+   */
+  public ObjectId getCachedId() {
+    return id;
+  }
+
+  /**
+   * Return the number of lines of the body. Empty lines at the end are not counted, so an empty
+   * body has no line. The number is counted once without allocation.
+   *
+   * @return number of lines
+   */
+  public int getLineCount() {
+    if (lineCount < 0) {
+      int end = body.length();
+      while (end > 0 && body.charAt(end - 1) == '\n') {
+        end--;
+      }
+      int lines = end > 0 ? 1 : 0;
+      for (int i = 0; i < end; i++) {
+        if (body.charAt(i) == '\n') {
+          lines++;
+        }
+      }
+      lineCount = lines;
+    }
+    return lineCount;
+  }
+
+  /**
+   * Return true if the body is the same as the body of another blob. Names are not compared.
+   *
+   * @param other
+   *          blob to compare
+   * @return true if the bodies have the same characters
+   */
+  public boolean contentEquals(Blob other) {
+    CharSequence otherBody = other.body;
+    if (body == otherBody) {
+      return true;
+    } else if (hasExactId() && other.hasExactId()) {
+      return id.equals(other.id);
+    } else if (body.length() != otherBody.length()) {
+      return false;
+    }
+    for (int i = body.length() - 1; i >= 0; i--) {
+      if (body.charAt(i) != otherBody.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Encode the body. A body which has only US-ASCII characters, as most source code does, is
+   * encoded without copying it to a String.
+   *
+   * @param charset
+   *          charset which encodes US-ASCII characters to single bytes of the same values, such as
+   *          US-ASCII and UTF-8
+   * @return encoded body
+   */
+  public byte[] encode(Charset charset) {
+    byte[] bytes = encodeAscii();
+    if (bytes == null) {
+      return body.toString().getBytes(charset);
+    }
+    return bytes;
+  }
+
+  /**
+   * Encode the body if it has only US-ASCII characters.
+   *
+   * @return encoded body, or null if the body has another character
+   */
+  private byte[] encodeAscii() {
+    byte[] bytes = new byte[body.length()];
+    for (int i = 0; i < bytes.length; i++) {
+      char ch = body.charAt(i);
+      if (ch >= 0x80) {
+        return null;
+      }
+      bytes[i] = (byte) ch;
+    }
+    return bytes;
+  }
+
+  /**
+   * Write the body without copying a SourceSlice.
+   *
+   * @param out
+   *          writer
+   * @throws IOException
+   *           if out can not be written
+   */
+  public void writeTo(Writer out) throws IOException {
+    if (body instanceof SourceSlice) {
+      ((SourceSlice) body).writeTo(out);
+    } else {
+      out.write(body.toString());
+    }
   }
 }
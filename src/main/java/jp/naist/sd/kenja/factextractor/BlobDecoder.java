@@ -0,0 +1,180 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectLoader;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A reusable decoder of source code in blobs.
+ *
+ * Blobs are decoded into a buffer which is reused by later blobs, and the source code is copied
+ * out of it by toArray, so only an array of the exact length is allocated for each blob. The buffer
+ * is reallocated when it is much larger than a blob, so one huge blob does not keep its memory for
+ * the rest of the run. Small blobs are decoded from the bytes cached by JGit without opening a
+ * stream. If a blob starts with a byte order mark of UTF-8 or UTF-16, the mark is skipped and the
+ * blob is decoded in its charset instead of the default one. Malformed bytes are replaced like
+ * InputStreamReader does. A BlobDecoder must not be shared by threads.
+ */
+public class BlobDecoder {
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * the buffer is reallocated if it is larger than this times the required capacity.
+   */
+  private static final int SHRINK_RATIO = 4;
+
+  private final Charset charset;
+
+  private final Map<Charset, CharsetDecoder> decoders = new HashMap<Charset, CharsetDecoder>();
+
+  private char[] buffer = new char[0];
+
+  /**
+   * length of source code in the buffer.
+   */
+  private int length;
+
+  /**
+   * Create a BlobDecoder.
+   *
+   * @param charset
+   *          charset of blobs without a byte order mark
+   */
+  public BlobDecoder(Charset charset) {
+    this.charset = charset;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Decode a blob into the buffer.
+   *
+   * @param loader
+   *          loader of the blob
+   * @return length of the source code
+   * @throws IOException
+   *           if the blob can not be read
+   */
+  public int decode(ObjectLoader loader) throws IOException {
+    if (!loader.isLarge()) {
+      byte[] bytes = loader.getCachedBytes();
+      return decode(bytes, 0, bytes.length);
+    }
+    InputStream in = loader.openStream();
+    try {
+      byte[] bytes = IOUtils.toByteArray(in, loader.getSize());
+      return decode(bytes, 0, bytes.length);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Decode bytes into the buffer.
+   *
+   * @param bytes
+   *          encoded source code
+   * @param offset
+   *          offset of the source code in bytes
+   * @param size
+   *          number of bytes of the source code
+   * @return length of the source code
+   */
+  public int decode(byte[] bytes, int offset, int size) {
+    Charset bomCharset = detectCharset(bytes, offset, size);
+    int bomLength = 0;
+    if (bomCharset == null) {
+      bomCharset = charset;
+    } else {
+      bomLength = bomCharset.equals(Charsets.UTF_8) ? 3 : 2;
+    }
+
+    CharsetDecoder decoder = getDecoder(bomCharset);
+    int required = (int) Math.ceil((size - bomLength) * (double) decoder.maxCharsPerByte()) + 1;
+    ensureCapacity(required);
+
+    ByteBuffer in = ByteBuffer.wrap(bytes, offset + bomLength, size - bomLength);
+    CharBuffer out = CharBuffer.wrap(buffer);
+    decoder.reset();
+    decoder.decode(in, out, true);
+    decoder.flush(out);
+
+    length = out.position();
+    return length;
+  }
+
+  /**
+   * Return the length of the source code in the buffer.
+   *
+   * @return length of the source code
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Return a copy of the source code in the buffer, which is kept after the next blob is decoded.
+   * The copy is passed to the parser, which reads the whole array as the source code.
+   *
+   * @return source code
+   */
+  public char[] toArray() {
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private void ensureCapacity(int capacity) {
+    long maxSize = Math.max((long) capacity * SHRINK_RATIO, INITIAL_BUFFER_SIZE);
+    if (buffer.length >= capacity && buffer.length <= maxSize) {
+      return;
+    }
+    if (buffer.length < capacity) {
+      buffer = new char[Math.max(capacity, Math.max(buffer.length * 2, INITIAL_BUFFER_SIZE))];
+    } else {
+      buffer = new char[Math.max(capacity, INITIAL_BUFFER_SIZE)];
+    }
+    length = 0;
+  }
+
+  private CharsetDecoder getDecoder(Charset cs) {
+    CharsetDecoder decoder = decoders.get(cs);
+    if (decoder == null) {
+      decoder = cs.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      decoders.put(cs, decoder);
+    }
+    return decoder;
+  }
+
+  /**
+   * Return the charset of a byte order mark.
+   *
+   * @return charset, or null if the bytes do not start with a byte order mark
+   */
+  private static Charset detectCharset(byte[] bytes, int offset, int size) {
+    if (size >= 3 && (bytes[offset] & 0xff) == 0xef && (bytes[offset + 1] & 0xff) == 0xbb
+        && (bytes[offset + 2] & 0xff) == 0xbf) {
+      return Charsets.UTF_8;
+    } else if (size >= 2 && (bytes[offset] & 0xff) == 0xfe
+        && (bytes[offset + 1] & 0xff) == 0xff) {
+      return Charsets.UTF_16BE;
+    } else if (size >= 2 && (bytes[offset] & 0xff) == 0xff
+        && (bytes[offset + 1] & 0xff) == 0xfe) {
+      return Charsets.UTF_16LE;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,482 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Extract syntax trees of git blobs whose ids are given one per line.
+ *
+ * With several threads, blobs flow through three stages which have their own thread pools: load
+ * reads blobs from the repository, parse builds syntax trees, and write writes them to the output.
+ * Queues between the stages are bounded, and a stage blocks when the queue of the next stage is
+ * full. Source code is counted as in flight from load until its syntax tree is written, and load
+ * waits while the total size of source code in flight exceeds the limit, so memory stays bounded
+ * when many huge files arrive at once. Queue lengths, active threads and bytes in flight are
+ * reported as gauges of Metrics.
+ *
+ * Every syntax tree is written by exactly one task, which keeps the output identical to a serial
+ * run. Blobs which are already in the ExtractedBlobIndex are skipped without being loaded.
+ *
+ * Each thread which loads blobs keeps its own ObjectReader for the whole run, so its caches of
+ * pack files are reused between blobs. If a PackOrder is set, all blob ids are read first and
+ * loaded in the order of their offsets in packs instead of the given order.
+ */
+public class BlobExtractor {
+
+  /**
+   * number of pending tasks per worker thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+  /**
+   * default number of threads of the load stage.
+   */
+  public static final int DEFAULT_LOAD_THREADS = 2;
+
+  /**
+   * default number of threads of the write stage.
+   */
+  public static final int DEFAULT_WRITE_THREADS = 2;
+
+  /**
+   * default limit of source code in flight in bytes.
+   */
+  public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L << 20;
+
+  /**
+   * unit of permits of inFlight in bytes.
+   */
+  private static final int PERMIT_BYTES = 1024;
+
+  private GitTreeCreator creator;
+
+  private Repository repo;
+
+  private SyntaxTreeOutput output;
+
+  private int numThreads;
+
+  private ExtractedBlobIndex index;
+
+  private int loadThreads;
+
+  private int writeThreads;
+
+  /**
+   * permits of source code in flight in units of PERMIT_BYTES.
+   */
+  private Semaphore inFlight;
+
+  private int maxPermits;
+
+  private ExecutorService loaders;
+
+  private ExecutorService parsers;
+
+  private ExecutorService writers;
+
+  /**
+   * order of blobs to load, or null to load blobs in the given order.
+   */
+  private PackOrder packOrder;
+
+  /**
+   * all ObjectReaders created by threads, which are released after extraction.
+   */
+  private final List<ObjectReader> allReaders = new ArrayList<ObjectReader>();
+
+  private final ThreadLocal<ObjectReader> readers = new ThreadLocal<ObjectReader>() {
+    @Override
+    protected ObjectReader initialValue() {
+      ObjectReader reader = repo.newObjectReader();
+      synchronized (allReaders) {
+        allReaders.add(reader);
+      }
+      return reader;
+    }
+  };
+
+  /**
+   * Create a BlobExtractor whose load and write stages have default sizes.
+   *
+   * @param creator
+   *          GitTreeCreator which parses and writes source code
+   * @param repo
+   *          repository which contains blobs
+   * @param output
+   *          destination of syntax trees
+   * @param numThreads
+   *          number of worker threads. blobs are processed on the calling thread if 1
+   * @param index
+   *          index of extracted blobs
+   */
+  public BlobExtractor(GitTreeCreator creator, Repository repo, SyntaxTreeOutput output,
+      int numThreads, ExtractedBlobIndex index) {
+    this(creator, repo, output, numThreads, index, DEFAULT_LOAD_THREADS, DEFAULT_WRITE_THREADS,
+        DEFAULT_MAX_IN_FLIGHT_BYTES);
+  }
+
+  /**
+   * Create a BlobExtractor.
+   *
+   * @param creator
+   *          GitTreeCreator which parses and writes source code
+   * @param repo
+   *          repository which contains blobs
+   * @param output
+   *          destination of syntax trees
+   * @param numThreads
+   *          number of threads of the parse stage. blobs are processed on the calling thread if 1
+   * @param index
+   *          index of extracted blobs
+   * @param loadThreads
+   *          number of threads of the load stage
+   * @param writeThreads
+   *          number of threads of the write stage
+   * @param maxInFlightBytes
+   *          limit of source code in flight in bytes. A blob larger than it is processed alone.
+   */
+  public BlobExtractor(GitTreeCreator creator, Repository repo, SyntaxTreeOutput output,
+      int numThreads, ExtractedBlobIndex index, int loadThreads, int writeThreads,
+      long maxInFlightBytes) {
+    this.creator = creator;
+    this.repo = repo;
+    this.output = output;
+    this.numThreads = numThreads;
+    this.index = index;
+    this.loadThreads = Math.max(loadThreads, 1);
+    this.writeThreads = Math.max(writeThreads, 1);
+    this.maxPermits = (int) Math.min(Math.max(maxInFlightBytes / PERMIT_BYTES, 1),
+        Integer.MAX_VALUE);
+  }
+
+  /**
+   * Load blobs in the order of their offsets in packs. All blob ids are read before the first
+   * blob is loaded.
+   *
+   * @param packOrder
+   *          order of objects in packs, or null to load blobs in the given order
+   */
+  public void setPackOrder(PackOrder packOrder) {
+    this.packOrder = packOrder;
+  }
+
+  /**
+   * Extract syntax trees of all blobs read from the reader.
+   *
+   * @param reader
+   *          reader which gives a blob id per line
+   * @throws IOException
+   *           if reading the blob ids failed
+   */
+  public void extract(BufferedReader reader) throws IOException {
+    try {
+      if (packOrder == null) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          ObjectId blobId = ObjectId.fromString(line);
+          if (index.claim(blobId)) {
+            submit(line, blobId);
+          }
+        }
+      } else {
+        List<ObjectId> blobIds = new ArrayList<ObjectId>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+          ObjectId blobId = ObjectId.fromString(line);
+          if (index.claim(blobId)) {
+            blobIds.add(blobId);
+          }
+        }
+        for (ObjectId blobId : packOrder.sort(blobIds)) {
+          submit(blobId.name(), blobId);
+        }
+      }
+    } finally {
+      finish();
+    }
+  }
+
+  private void submit(String name, ObjectId blobId) {
+    if (numThreads <= 1) {
+      new BlobTask(name, blobId).run();
+      return;
+    }
+
+    if (loaders == null) {
+      // fair, so a large blob is not starved by smaller ones which keep acquiring permits.
+      inFlight = new Semaphore(maxPermits, true);
+      loaders = createExecutor(loadThreads);
+      parsers = createExecutor(numThreads);
+      writers = createExecutor(writeThreads);
+      registerGauges();
+    }
+    loaders.execute(new LoadTask(name, blobId));
+  }
+
+  private void finish() {
+    if (loaders != null) {
+      // each stage submits tasks to the next one until it terminates.
+      loaders.shutdown();
+      awaitTermination(loaders);
+      parsers.shutdown();
+      awaitTermination(parsers);
+      writers.shutdown();
+      awaitTermination(writers);
+      loaders = null;
+    }
+
+    synchronized (allReaders) {
+      for (ObjectReader reader : allReaders) {
+        reader.release();
+      }
+      allReaders.clear();
+    }
+    readers.remove();
+  }
+
+  /**
+   * Open a blob with the ObjectReader of the current thread.
+   */
+  private ObjectLoader open(ObjectId blobId) throws IOException {
+    return readers.get().open(blobId, Constants.OBJ_BLOB);
+  }
+
+  /**
+   * Create a thread pool whose queue is bounded. If the queue is full, the submitting thread waits
+   * until the queue has room, so a stage never gets far ahead of the next one.
+   *
+   * @param size
+   *          number of threads
+   * @return thread pool of a stage
+   */
+  private ExecutorService createExecutor(int size) {
+    return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(size * QUEUE_SIZE_PER_THREAD), new BlockingPolicy());
+  }
+
+  private void registerGauges() {
+    Metrics metrics = creator.getMetrics();
+    registerGauges(metrics, "load", (ThreadPoolExecutor) loaders);
+    registerGauges(metrics, "parse", (ThreadPoolExecutor) parsers);
+    registerGauges(metrics, "write", (ThreadPoolExecutor) writers);
+    metrics.register("inFlightBytes", new Metrics.Gauge() {
+      @Override
+      public long getValue() {
+        return (long) (maxPermits - inFlight.availablePermits()) * PERMIT_BYTES;
+      }
+    });
+  }
+
+  private void registerGauges(Metrics metrics, String stage, final ThreadPoolExecutor executor) {
+    metrics.register(stage + "Queued", new Metrics.Gauge() {
+      @Override
+      public long getValue() {
+        return executor.getQueue().size();
+      }
+    });
+    metrics.register(stage + "Active", new Metrics.Gauge() {
+      @Override
+      public long getValue() {
+        return executor.getActiveCount();
+      }
+    });
+  }
+
+  private void awaitTermination(ExecutorService executor) {
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        continue;
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Return the number of permits of inFlight for source code of a size. A blob larger than the
+   * limit takes all permits.
+   */
+  private int getPermits(long size) {
+    return (int) Math.max(Math.min((size + PERMIT_BYTES - 1) / PERMIT_BYTES, maxPermits), 1);
+  }
+
+  /**
+   * A task which loads, parses and writes one blob on the calling thread.
+   */
+  private class BlobTask implements Runnable {
+    private String name;
+
+    private ObjectId blobId;
+
+    public BlobTask(String name, ObjectId blobId) {
+      this.name = name;
+      this.blobId = blobId;
+    }
+
+    @Override
+    public void run() {
+      Metrics metrics = creator.getMetrics();
+      try {
+        long start = System.nanoTime();
+        ObjectLoader loader = open(blobId);
+
+        BlobDecoder decoder = creator.getDecoder();
+        decoder.decode(loader);
+        metrics.record(Metrics.Stage.LOAD, start);
+        metrics.addSource(loader.getSize());
+
+        Tree tree = creator.parseSourcecode(decoder.toArray()).getTree();
+
+        start = System.nanoTime();
+        metrics.addBytesOut(output.write(name, tree));
+        metrics.record(Metrics.Stage.WRITE, start);
+        index.markExtracted(blobId);
+      } catch (IOException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+      } catch (RuntimeException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+      } catch (StackOverflowError e) {
+        // deeply nested source code, which is skipped as in the parse stage.
+        metrics.addFailure();
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * A task of the load stage, which reads a blob and passes it to the parse stage.
+   */
+  private class LoadTask implements Runnable {
+    private String name;
+
+    private ObjectId blobId;
+
+    public LoadTask(String name, ObjectId blobId) {
+      this.name = name;
+      this.blobId = blobId;
+    }
+
+    @Override
+    public void run() {
+      Metrics metrics = creator.getMetrics();
+      int permits = 0;
+      try {
+        long start = System.nanoTime();
+        // the size is read from the object header, so no blob is opened before its permits are
+        // acquired.
+        int needed = getPermits(readers.get().getObjectSize(blobId, Constants.OBJ_BLOB));
+        inFlight.acquire(needed);
+        permits = needed;
+        ObjectLoader loader = open(blobId);
+
+        BlobDecoder decoder = creator.getDecoder();
+        decoder.decode(loader);
+        // the source code is parsed by another thread while the buffer is reused.
+        char[] src = decoder.toArray();
+        metrics.record(Metrics.Stage.LOAD, start);
+        metrics.addSource(loader.getSize());
+
+        parsers.execute(new ParseTask(name, blobId, src, permits));
+        permits = 0;
+      } catch (IOException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        inFlight.release(permits);
+      }
+    }
+  }
+
+  /**
+   * A task of the parse stage, which builds a syntax tree and passes it to the write stage.
+   */
+  private class ParseTask implements Runnable {
+    private String name;
+
+    private ObjectId blobId;
+
+    private char[] src;
+
+    private int permits;
+
+    public ParseTask(String name, ObjectId blobId, char[] src, int permits) {
+      this.name = name;
+      this.blobId = blobId;
+      this.src = src;
+      this.permits = permits;
+    }
+
+    @Override
+    public void run() {
+      Metrics metrics = creator.getMetrics();
+      try {
+        Tree tree = creator.parseSourcecode(src).getTree();
+        writers.execute(new WriteTask(name, blobId, tree, permits));
+        return;
+      } catch (RuntimeException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+      } catch (StackOverflowError e) {
+        // deeply nested source code, which is skipped as in a serial run.
+        metrics.addFailure();
+        e.printStackTrace();
+      }
+      inFlight.release(permits);
+    }
+  }
+
+  /**
+   * A task of the write stage, which writes a syntax tree.
+   */
+  private class WriteTask implements Runnable {
+    private String name;
+
+    private ObjectId blobId;
+
+    private Tree tree;
+
+    private int permits;
+
+    public WriteTask(String name, ObjectId blobId, Tree tree, int permits) {
+      this.name = name;
+      this.blobId = blobId;
+      this.tree = tree;
+      this.permits = permits;
+    }
+
+    @Override
+    public void run() {
+      Metrics metrics = creator.getMetrics();
+      try {
+        long start = System.nanoTime();
+        metrics.addBytesOut(output.write(name, tree));
+        metrics.record(Metrics.Stage.WRITE, start);
+        index.markExtracted(blobId);
+      } catch (IOException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+      } finally {
+        inFlight.release(permits);
+      }
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A RejectedExecutionHandler which waits until the queue of the executor has room, so a producer
+ * never gets far ahead of the workers of a bounded queue.
+ */
+class BlockingPolicy implements RejectedExecutionHandler {
+  @Override
+  public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("executor is shut down");
+    }
+    try {
+      executor.getQueue().put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException(e);
+    }
+  }
+}
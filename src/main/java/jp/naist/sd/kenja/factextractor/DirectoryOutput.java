@@ -0,0 +1,41 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A SyntaxTreeOutput which writes each syntax tree to a directory in the syntax trees directory by
+ * FileFormatTreeWriter.
+ *
+ * A syntax tree which is already written is read back by FileFormatTreeReader and only its
+ * changed entries are rewritten, so re-extracting a file of which one method changed writes the
+ * files of that method alone. This suits the watch mode, where the same files are extracted again
+ * and again.
+ */
+public class DirectoryOutput implements SyntaxTreeOutput {
+  private File syntaxTreeDir;
+
+  public DirectoryOutput(File syntaxTreeDir) {
+    this.syntaxTreeDir = syntaxTreeDir;
+  }
+
+  @Override
+  public long write(String name, Tree tree) throws IOException {
+    File dir = new File(syntaxTreeDir, name);
+    if (dir.isFile() && !dir.delete()) {
+      throw new IOException("failed to delete " + dir);
+    }
+    Tree previous = new FileFormatTreeReader(dir).readTree();
+    FileFormatTreeWriter writer = new FileFormatTreeWriter(dir);
+    if (previous == null) {
+      writer.writeTree(tree);
+    } else {
+      writer.writeDelta(previous, tree);
+    }
+    return writer.getBytesWritten();
+  }
+
+  @Override
+  public void close() {
+  }
+}
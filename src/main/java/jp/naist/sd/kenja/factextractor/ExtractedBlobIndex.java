@@ -0,0 +1,242 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A set of blob ids whose syntax trees are already extracted.
+ *
+ * The index is kept in memory to skip blob ids which appear twice in one run. If it is opened with
+ * a file, extracted blob ids are also appended to the file and skipped by later runs. Each blob id
+ * is flushed as soon as it is recorded, so a killed run loses at most the line it was writing. The
+ * first line of the file is a stamp of the output format. An index with another stamp is discarded
+ * because its syntax trees have to be extracted again.
+ */
+public class ExtractedBlobIndex implements Closeable {
+
+  /**
+   * default file name of the index in the syntax trees directory.
+   */
+  public static final String DEFAULT_FILE_NAME = ".kenja-extracted";
+
+  /**
+   * prefix of the first line of an index file.
+   */
+  private static final String HEADER_PREFIX = "# kenja extracted blobs: ";
+
+  /**
+   * blob ids which were extracted or are being extracted.
+   */
+  private Set<ObjectId> claimed = new HashSet<ObjectId>();
+
+  /**
+   * writer of the index file. null if the index is not persistent.
+   */
+  private Writer out;
+
+  /**
+   * Create an index which is kept in memory only.
+   */
+  public ExtractedBlobIndex() {
+  }
+
+  /**
+   * Open a persistent index.
+   *
+   * @param file
+   *          index file. It is created if it does not exist.
+   * @param stamp
+   *          stamp of the output format
+   * @return index which contains blob ids stored in the file
+   * @throws IOException
+   *           if the index file can not be read or written
+   */
+  public static ExtractedBlobIndex open(File file, String stamp) throws IOException {
+    ExtractedBlobIndex index = new ExtractedBlobIndex();
+    String header = HEADER_PREFIX + stamp;
+
+    boolean valid = file.exists() && index.load(file, header);
+    if (!valid && file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    boolean torn = valid && !endsWithLineSeparator(file);
+    FileOutputStream stream = new FileOutputStream(file, valid);
+    index.out = new BufferedWriter(new OutputStreamWriter(stream, Charsets.US_ASCII));
+    if (!valid) {
+      index.out.write(header);
+      index.out.write("\n");
+      index.out.flush();
+    } else if (torn) {
+      // terminate the line broken by a killed run, so the first blob id appended is not lost.
+      index.out.write("\n");
+      index.out.flush();
+    }
+    return index;
+  }
+
+  /**
+   * Return True if the last byte of a file is a line separator.
+   */
+  private static boolean endsWithLineSeparator(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      if (raf.length() == 0) {
+        return false;
+      }
+      raf.seek(raf.length() - 1);
+      return raf.read() == '\n';
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Replace the stamp of an index file whose syntax trees are still valid with another stamp, such
+   * as after syntax tree files are moved to another layout. The file is replaced after it is
+   * written completely.
+   *
+   * @param file
+   *          index file
+   * @param oldStamps
+   *          stamps which may be replaced
+   * @param stamp
+   *          new stamp
+   * @return true if the file was rewritten, false if it does not exist or has another stamp
+   * @throws IOException
+   *           if the index file can not be read or written
+   */
+  public static boolean restamp(File file, Collection<String> oldStamps, String stamp)
+      throws IOException {
+    if (!file.exists()) {
+      return false;
+    }
+    File tempFile = new File(file.getPath() + ".tmp");
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        Charsets.US_ASCII));
+    try {
+      String header = reader.readLine();
+      if (header == null || !header.startsWith(HEADER_PREFIX)
+          || !oldStamps.contains(header.substring(HEADER_PREFIX.length()))) {
+        return false;
+      }
+      Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile),
+          Charsets.US_ASCII));
+      try {
+        writer.write(HEADER_PREFIX + stamp);
+        writer.write("\n");
+        String line;
+        while ((line = reader.readLine()) != null) {
+          // a broken line is dropped.
+          if (ObjectId.isId(line)) {
+            writer.write(line);
+            writer.write("\n");
+          }
+        }
+      } finally {
+        writer.close();
+      }
+    } finally {
+      reader.close();
+    }
+
+    if (!file.delete()) {
+      throw new IOException("can not replace " + file);
+    }
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("can not rename " + tempFile);
+    }
+    return true;
+  }
+
+  /**
+   * Read blob ids from the index file.
+   *
+   * @return false if the file was written with another stamp
+   */
+  private boolean load(File file, String header) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        Charsets.US_ASCII));
+    try {
+      if (!header.equals(reader.readLine())) {
+        return false;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // a line may be broken if the previous run was killed while writing it.
+        if (ObjectId.isId(line)) {
+          claimed.add(ObjectId.fromString(line));
+        }
+      }
+      return true;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Replace the blob ids read from the index file with the blob ids whose syntax trees are stored
+   * in the output. An output which records its own syntax trees, such as PackedOutput, may lose
+   * buffered syntax trees whose blob ids are already in the index file if the run is killed, so its
+   * records are trusted instead of the file.
+   *
+   * @param blobIds
+   *          ids of blobs whose syntax trees are stored
+   */
+  public synchronized void setExtracted(Collection<ObjectId> blobIds) {
+    claimed.clear();
+    claimed.addAll(blobIds);
+  }
+
+  /**
+   * Claim a blob for extraction.
+   *
+   * @param blobId
+   *          id of the blob
+   * @return true if the blob is neither extracted nor claimed yet
+   */
+  public synchronized boolean claim(AnyObjectId blobId) {
+    return claimed.add(blobId.copy());
+  }
+
+  /**
+   * Record that the syntax tree of a blob is written. The blob id is flushed to the index file.
+   *
+   * @param blobId
+   *          id of the blob
+   * @throws IOException
+   *           if the index file can not be written
+   */
+  public synchronized void markExtracted(AnyObjectId blobId) throws IOException {
+    claimed.add(blobId.copy());
+    if (out != null) {
+      out.write(blobId.name());
+      out.write("\n");
+      out.flush();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+}
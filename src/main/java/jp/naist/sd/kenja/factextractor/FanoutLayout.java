@@ -0,0 +1,141 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A layout of syntax tree files which are named by blob ids, like git loose objects.
+ *
+ * Each level of directories is named by the next two characters of the blob id, so a layout of
+ * depth 1 places the syntax tree of blob abcdef... at ab/cdef..., and a layout of depth 0 places
+ * all files directly in the syntax trees directory. Directories then stay small however many
+ * blobs are extracted.
+ */
+public class FanoutLayout {
+  /**
+   * maximum depth. Four levels split 2^32 blobs into directories of about 16 entries.
+   */
+  public static final int MAX_DEPTH = 4;
+
+  private static final int CHARS_PER_LEVEL = 2;
+
+  private int depth;
+
+  /**
+   * Create a FanoutLayout.
+   *
+   * @param depth
+   *          number of levels of directories, from 0 to MAX_DEPTH
+   */
+  public FanoutLayout(int depth) {
+    if (depth < 0 || depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("fan-out depth must be 0 to " + MAX_DEPTH + ": "
+          + depth);
+    }
+    this.depth = depth;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Return the file of a syntax tree in this layout.
+   *
+   * @param dir
+   *          syntax trees directory
+   * @param name
+   *          name of the syntax tree, which is the id of the blob
+   * @return file of the syntax tree
+   */
+  public File getFile(File dir, String name) {
+    return getFile(dir, name, depth);
+  }
+
+  private static File getFile(File dir, String name, int depth) {
+    File file = dir;
+    int start = 0;
+    for (int level = 0; level < depth; level++) {
+      file = new File(file, name.substring(start, start + CHARS_PER_LEVEL));
+      start += CHARS_PER_LEVEL;
+    }
+    return new File(file, name.substring(start));
+  }
+
+  /**
+   * Find the file of a syntax tree in any depth of layout. The depths are tried from 0, so a
+   * directory which is partially migrated is also searched.
+   *
+   * @param dir
+   *          syntax trees directory
+   * @param name
+   *          name of the syntax tree, which is the id of the blob
+   * @return file of the syntax tree, or null if it does not exist
+   */
+  public static File find(File dir, String name) {
+    for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+      File file = getFile(dir, name, depth);
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Move syntax tree files in a directory of any layout to this layout. Files which are not named
+   * by blob ids are not moved, and fan-out directories which become empty are removed.
+   *
+   * @param dir
+   *          syntax trees directory
+   * @return number of moved files
+   * @throws IOException
+   *           if a file can not be moved
+   */
+  public int migrate(File dir) throws IOException {
+    return migrate(dir, dir, "");
+  }
+
+  private int migrate(File root, File current, String prefix) throws IOException {
+    File[] children = current.listFiles();
+    if (children == null) {
+      throw new IOException("can not list " + current);
+    }
+
+    int moved = 0;
+    for (File child : children) {
+      String name = prefix + child.getName();
+      if (child.isDirectory()) {
+        if (isFanoutDirectory(child.getName()) && name.length() <= MAX_DEPTH * CHARS_PER_LEVEL) {
+          moved += migrate(root, child, name);
+          // fails unless the directory has become empty.
+          child.delete();
+        }
+      } else if (ObjectId.isId(name)) {
+        File target = getFile(root, name);
+        if (!target.equals(child)) {
+          target.getParentFile().mkdirs();
+          if (target.exists() || !child.renameTo(target)) {
+            throw new IOException("can not move " + child + " to " + target);
+          }
+          moved++;
+        }
+      }
+    }
+    return moved;
+  }
+
+  private static boolean isFanoutDirectory(String name) {
+    if (name.length() != CHARS_PER_LEVEL) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (Character.digit(name.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,62 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * A reader of trees written by FileFormatTreeWriter, where each tree is a directory and each blob
+ * is a file.
+ *
+ * Bodies are read as US-ASCII like they are written, so a body which had non-ASCII characters is
+ * read with '?' in their places and differs from the body it was written from.
+ */
+public class FileFormatTreeReader {
+  private File baseDir;
+
+  /**
+   * Create a FileFormatTreeReader.
+   *
+   * @param baseDir
+   *          directory of the root tree
+   */
+  public FileFormatTreeReader(File baseDir) {
+    this.baseDir = baseDir;
+  }
+
+  /**
+   * Read the root tree.
+   *
+   * @return the tree, or null if the directory does not exist
+   * @throws IOException
+   *           if a file can not be read
+   */
+  public Tree readTree() throws IOException {
+    if (!baseDir.isDirectory()) {
+      return null;
+    }
+    Tree root = new Tree("");
+    readEntries(baseDir, root);
+    return root;
+  }
+
+  private void readEntries(File dir, Tree tree) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      throw new IOException("can not list " + dir);
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      if (file.isDirectory()) {
+        Tree child = new Tree(file.getName());
+        readEntries(file, child);
+        tree.append(child);
+      } else {
+        tree.append(new Blob(Files.toString(file, Charsets.US_ASCII), file.getName()));
+      }
+    }
+  }
+}
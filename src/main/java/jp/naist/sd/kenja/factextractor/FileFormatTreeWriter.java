@@ -1,14 +1,26 @@
 package jp.naist.sd.kenja.factextractor;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.CountingOutputStream;
 import com.google.common.io.Files;
 
 public class FileFormatTreeWriter implements TreeWriter {
   private File currentDir;
 
+  /**
+   * number of bytes written to blob files.
+   */
+  private long bytesWritten;
+
   public FileFormatTreeWriter(File baseDir) {
     if (!baseDir.exists()) {
       try {
@@ -41,13 +53,76 @@ public class FileFormatTreeWriter implements TreeWriter {
     currentDir = parentDir;
   }
 
+  /**
+   * Update files of a tree which were written from its previous version. Only files and
+   * directories of changed entries are written or deleted, so the written bytes are proportional
+   * to the changes rather than to the size of the tree.
+   *
+   * @param previous
+   *          previous version of the tree, which is already written
+   * @param tree
+   *          new version of the tree
+   * @return applied changes
+   * @throws IOException
+   *           if a file can not be written or deleted
+   */
+  public List<TreeDiff.Change> writeDelta(Tree previous, Tree tree) throws IOException {
+    List<TreeDiff.Change> changes = TreeDiff.compare(previous, tree);
+    File baseDir = currentDir;
+    File treeDir = tree.isRoot() ? baseDir : new File(baseDir, tree.getName());
+    try {
+      // removed first, because a blob may replace a tree of the same name.
+      for (TreeDiff.Change change : changes) {
+        if (change.getType() != TreeDiff.Type.REMOVED) {
+          continue;
+        }
+        File file = new File(treeDir, change.getPath());
+        if (change.isTree()) {
+          FileUtils.deleteDirectory(file);
+        } else if (file.exists() && !file.delete()) {
+          throw new IOException("can not delete " + file);
+        }
+      }
+
+      for (TreeDiff.Change change : changes) {
+        if (change.getType() == TreeDiff.Type.REMOVED) {
+          continue;
+        }
+        currentDir = new File(treeDir, change.getPath()).getParentFile();
+        if (change.isTree()) {
+          writeTree((Tree) change.getNewEntry());
+        } else {
+          writeBlob((Blob) change.getNewEntry());
+        }
+      }
+    } finally {
+      currentDir = baseDir;
+    }
+    return changes;
+  }
+
   public void writeBlob(Blob blob) throws IOException {
     if (!currentDir.exists()) {
       Files.createParentDirs(currentDir);
     }
     currentDir.mkdir();
     File blobFile = new File(currentDir, blob.getName());
-    blobFile.createNewFile();
-    Files.write(blob.getBody(), blobFile, Charsets.US_ASCII);
+    CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(blobFile));
+    Writer out = new OutputStreamWriter(counter, Charsets.US_ASCII);
+    try {
+      blob.writeTo(out);
+    } finally {
+      out.close();
+      bytesWritten += counter.getCount();
+    }
+  }
+
+  /**
+   * Return the number of bytes written to blob files by this writer.
+   *
+   * @return number of bytes
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
   }
 }
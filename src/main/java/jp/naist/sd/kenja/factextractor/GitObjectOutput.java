@@ -0,0 +1,82 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+
+/**
+ * A SyntaxTreeOutput which stores syntax trees as git objects in a target repository.
+ *
+ * For each syntax tree, a line of the name and the id of its root tree is printed, so that the
+ * caller can build commits from the trees.
+ */
+public class GitObjectOutput implements SyntaxTreeOutput {
+  private Repository repo;
+
+  private PrintStream mapping;
+
+  /**
+   * ids of objects stored by this output. Subtrees which are shared by syntax trees are inserted
+   * only once.
+   */
+  private Set<ObjectId> storedIds = Collections.newSetFromMap(
+      new ConcurrentHashMap<ObjectId, Boolean>());
+
+  /**
+   * Open the target repository. A bare repository is created if it does not exist.
+   *
+   * @param repositoryDir
+   *          directory of the target repository
+   * @param mapping
+   *          stream where "name tree-id" lines are printed
+   * @throws IOException
+   *           if the repository can not be opened
+   */
+  public GitObjectOutput(File repositoryDir, PrintStream mapping) throws IOException {
+    this.repo = new FileRepository(repositoryDir);
+    if (!repo.getObjectDatabase().exists()) {
+      repo.create(true);
+    }
+    this.mapping = mapping;
+  }
+
+  /**
+   * Return the target repository.
+   *
+   * @return the target repository
+   */
+  public Repository getRepository() {
+    return repo;
+  }
+
+  @Override
+  public long write(String name, Tree tree) throws IOException {
+    GitObjectTreeWriter writer;
+    ObjectInserter inserter = repo.newObjectInserter();
+    try {
+      writer = new GitObjectTreeWriter(inserter, storedIds);
+      writer.writeTree(tree);
+    } finally {
+      inserter.release();
+    }
+
+    synchronized (mapping) {
+      mapping.println(name + " " + writer.getTreeId().name());
+    }
+    return writer.getBytesWritten();
+  }
+
+  @Override
+  public void close() {
+    mapping.flush();
+    repo.close();
+  }
+}
@@ -0,0 +1,143 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A TreeWriter which stores Blobs and Trees as git objects.
+ *
+ * Blobs are encoded as FileFormatTreeWriter writes them to files, so the stored tree is the same
+ * as the one git creates from a directory written by FileFormatTreeWriter. Empty child trees are
+ * omitted because git does not track empty directories.
+ *
+ * Ids of trees and blobs are computed in memory first. A subtree or a blob whose id is in the set
+ * of known ids is not inserted again, so a subtree which is already stored is skipped without
+ * visiting its entries. Ids of inserted objects are added to the set after the inserter is flushed.
+ */
+public class GitObjectTreeWriter implements TreeWriter {
+  private ObjectInserter inserter;
+
+  /**
+   * id of the last written root tree.
+   */
+  private ObjectId treeId;
+
+  /**
+   * number of bytes of inserted blobs.
+   */
+  private long bytesWritten;
+
+  /**
+   * ids of objects which are stored in the target repository. It may be shared by writers.
+   */
+  private Set<ObjectId> knownIds;
+
+  /**
+   * ids of objects which are inserted but not flushed yet.
+   */
+  private List<ObjectId> insertedIds = new ArrayList<ObjectId>();
+
+  /**
+   * Create a GitObjectTreeWriter.
+   *
+   * @param inserter
+   *          inserter of the target repository. It is flushed but not released by this writer.
+   */
+  public GitObjectTreeWriter(ObjectInserter inserter) {
+    this(inserter, new HashSet<ObjectId>());
+  }
+
+  /**
+   * Create a GitObjectTreeWriter which skips objects already stored in the target repository.
+   *
+   * @param inserter
+   *          inserter of the target repository. It is flushed but not released by this writer.
+   * @param knownIds
+   *          ids of objects which are stored in the target repository. It must be thread-safe if
+   *          it is shared by threads.
+   */
+  public GitObjectTreeWriter(ObjectInserter inserter, Set<ObjectId> knownIds) {
+    this.inserter = inserter;
+    this.knownIds = knownIds;
+  }
+
+  /**
+   * Insert a tree and all its children, and flush the inserter.
+   */
+  public void writeTree(Tree tree) throws IOException {
+    treeId = insertTree(tree);
+    flush();
+  }
+
+  /**
+   * Flush the inserter, and add ids of inserted objects to the known ids.
+   *
+   * @throws IOException
+   *           if the inserter can not be flushed
+   */
+  public void flush() throws IOException {
+    inserter.flush();
+    knownIds.addAll(insertedIds);
+    insertedIds.clear();
+  }
+
+  /**
+   * Return id of the tree written by the last writeTree call.
+   *
+   * @return id of the tree
+   */
+  public ObjectId getTreeId() {
+    return treeId;
+  }
+
+  /**
+   * Insert a tree and all its children without flushing the inserter.
+   *
+   * @param tree
+   *          tree to be inserted
+   * @return id of the tree
+   * @throws IOException
+   *           if an object can not be inserted
+   */
+  public ObjectId insertTree(Tree tree) throws IOException {
+    insert(tree);
+    return tree.getId();
+  }
+
+  private void insert(Tree tree) throws IOException {
+    if (knownIds.contains(tree.getId())) {
+      return;
+    }
+    for (Blob blob : tree.getBlobs()) {
+      if (!knownIds.contains(blob.getId())) {
+        byte[] body = blob.encode(Charsets.US_ASCII);
+        bytesWritten += body.length;
+        insertedIds.add(inserter.insert(Constants.OBJ_BLOB, body));
+      }
+    }
+    for (Tree childTree : tree.getChildTrees()) {
+      if (!childTree.getId().equals(GitTreeEntry.EMPTY_TREE_ID)) {
+        insert(childTree);
+      }
+    }
+    insertedIds.add(inserter.insert(GitTreeEntry.format(tree.getGitEntries())));
+  }
+
+  /**
+   * Return the number of bytes of blobs inserted by this writer.
+   *
+   * @return number of inserted bytes
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+}
@@ -4,73 +4,565 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+import jp.naist.sd.kenja.factextractor.ast.ASTContext;
+import jp.naist.sd.kenja.factextractor.ast.MethodBodyCache;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepository;
 
 public class GitTreeCreator {
-  private Tree root = new Tree("");
+  /**
+   * version of the syntax tree format. Increment this when the output for the same source code
+   * changes, so that indexes of extracted blobs written by older versions are discarded.
+   */
+  private static final int FORMAT_VERSION = 1;
 
-  private ASTCompilation compilation;
+  /**
+   * output format which writes syntax trees as text files.
+   */
+  private static final String FORMAT_TEXT = "text";
+
+  /**
+   * output format which stores syntax trees as git objects in a repository.
+   */
+  private static final String FORMAT_GIT = "git";
+
+  /**
+   * output format which writes syntax trees as files of the binary format.
+   */
+  private static final String FORMAT_BINARY = "binary";
+
+  /**
+   * output format which writes each syntax tree as a directory and rewrites only changed entries.
+   */
+  private static final String FORMAT_DIR = "dir";
+
+  /**
+   * layout which writes each syntax tree to a file in the syntax trees directory.
+   */
+  private static final String LAYOUT_FLAT = "flat";
+
+  /**
+   * layout which writes each syntax tree to a file in fan-out directories named by its blob id.
+   */
+  private static final String LAYOUT_FANOUT = "fanout";
+
+  /**
+   * layout which appends syntax trees to segment files with a sorted index.
+   */
+  private static final String LAYOUT_PACKED = "packed";
+
+  /**
+   * mode which extracts syntax trees of blobs given by stdin.
+   */
+  private static final String MODE_BLOBS = "blobs";
+
+  /**
+   * mode which extracts Historage trees of all commits in a repository.
+   */
+  private static final String MODE_HISTORY = "history";
+
+  /**
+   * mode which extracts Historage trees of a branch from changes between commits.
+   */
+  private static final String MODE_INCREMENTAL = "incremental";
+
+  /**
+   * mode which serves parse requests through stdin and stdout.
+   */
+  private static final String MODE_DAEMON = "daemon";
+
+  /**
+   * mode which moves syntax tree files to another layout.
+   */
+  private static final String MODE_MIGRATE = "migrate";
+
+  /**
+   * mode which extracts syntax trees of source code files in a working tree.
+   */
+  private static final String MODE_WORKTREE = "worktree";
+
+  /**
+   * mode which keeps syntax trees of a working tree up to date while its files change.
+   */
+  private static final String MODE_WATCH = "watch";
+
+  private Metrics metrics = new Metrics();
+
+  /**
+   * how texts of method bodies, parameters and super classes are extracted.
+   */
+  private ASTContext.BodyExtraction bodyExtraction = ASTContext.BodyExtraction.FLATTEN;
+
+  /**
+   * source code parsed by warmUp.
+   */
+  private static final String WARM_UP_SOURCE = "package p;\nclass C extends B {\n  int f;\n"
+      + "  void m(int a) {\n    m(a + 1);\n  }\n}\n";
+
+  /**
+   * settings of parsers.
+   */
+  private ParserProfile profile = ParserProfile.forName(ParserProfile.DEFAULT_NAME);
+
+  /**
+   * parser of each worker thread.
+   */
+  private ThreadLocal<SourceParser> parsers = new ThreadLocal<SourceParser>() {
+    @Override
+    protected SourceParser initialValue() {
+      return new SourceParser(profile);
+    }
+  };
+
+  /**
+   * cache of texts of methods. null if methods are not cached.
+   */
+  private MethodBodyCache methodBodyCache;
+
+  /**
+   * charset of source code without a byte order mark.
+   */
+  private Charset charset = Charset.defaultCharset();
+
+  /**
+   * decoder of each worker thread.
+   */
+  private ThreadLocal<BlobDecoder> decoders = new ThreadLocal<BlobDecoder>() {
+    @Override
+    protected BlobDecoder initialValue() {
+      return new BlobDecoder(charset);
+    }
+  };
 
   public GitTreeCreator() {
   }
 
-  private void parseSourcecode(char[] src) {
-    ASTParser parser = ASTParser.newParser(AST.JLS4);
+  /**
+   * Set settings of parsers. This must be called before extraction starts.
+   *
+   * @param profile
+   *          parser profile
+   */
+  public void setParserProfile(ParserProfile profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * Set the charset of source code without a byte order mark. This must be called before
+   * extraction starts.
+   *
+   * @param charset
+   *          charset of source code
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Reuse texts of methods whose source code is the same as methods parsed before. This must be
+   * called before extraction starts, and after settings of extraction are set.
+   *
+   * @param methodBodyCache
+   *          cache of texts of methods, or null if methods are not cached
+   */
+  public void setMethodBodyCache(final MethodBodyCache methodBodyCache) {
+    this.methodBodyCache = methodBodyCache;
+    if (methodBodyCache == null) {
+      return;
+    }
+    metrics.register("methodCacheHits", new Metrics.Gauge() {
+      @Override
+      public long getValue() {
+        return methodBodyCache.getHits();
+      }
+    });
+    metrics.register("methodCacheMisses", new Metrics.Gauge() {
+      @Override
+      public long getValue() {
+        return methodBodyCache.getMisses();
+      }
+    });
+  }
+
+  /**
+   * Return the decoder of the current thread.
+   *
+   * @return decoder of source code
+   */
+  BlobDecoder getDecoder() {
+    return decoders.get();
+  }
+
+  /**
+   * Set how texts of method bodies, parameters and super classes are extracted. This must be
+   * called before extraction starts.
+   *
+   * @param bodyExtraction
+   *          FLATTEN prints AST nodes, SOURCE and NORMALIZED_SOURCE copy them from source code, and
+   *          NONE skips method bodies
+   */
+  public void setBodyExtraction(ASTContext.BodyExtraction bodyExtraction) {
+    this.bodyExtraction = bodyExtraction;
+  }
 
-    parser.setSource(src);
+  /**
+   * Return the body extraction of a value of the --body option.
+   *
+   * @param name
+   *          flatten, source, normalized or none
+   * @return body extraction
+   */
+  static ASTContext.BodyExtraction toBodyExtraction(String name) {
+    if (name.equals("flatten")) {
+      return ASTContext.BodyExtraction.FLATTEN;
+    } else if (name.equals("source")) {
+      return ASTContext.BodyExtraction.SOURCE;
+    } else if (name.equals("normalized")) {
+      return ASTContext.BodyExtraction.NORMALIZED_SOURCE;
+    } else if (name.equals("none")) {
+      return ASTContext.BodyExtraction.NONE;
+    }
+    throw new IllegalArgumentException("unknown body extraction: " + name);
+  }
+
+  /**
+   * Return metrics of parsing and writing by this GitTreeCreator.
+   *
+   * @return metrics
+   */
+  public Metrics getMetrics() {
+    return metrics;
+  }
 
-    NullProgressMonitor nullMonitor = new NullProgressMonitor();
-    CompilationUnit unit = (CompilationUnit) parser.createAST(nullMonitor);
+  /**
+   * Parse source code and build its syntax tree.
+   *
+   * @param src
+   *          source code
+   * @return compilation whose tree is the syntax tree
+   */
+  ASTCompilation parseSourcecode(char[] src) {
+    long start = System.nanoTime();
+    boolean ignoreMethodBodies = bodyExtraction == ASTContext.BodyExtraction.NONE;
+    CompilationUnit unit = parsers.get().parse(src, ignoreMethodBodies);
+    metrics.record(Metrics.Stage.PARSE, start);
 
-    compilation = new ASTCompilation(unit, root);
+    start = System.nanoTime();
+    ASTContext context = new ASTContext(src, bodyExtraction, methodBodyCache);
+    ASTCompilation compilation = new ASTCompilation(unit, new Tree(""), context);
+    metrics.record(Metrics.Stage.BUILD, start);
+    metrics.addTree(compilation.getTree());
+    return compilation;
+  }
+
+  /**
+   * Parse a small compilation unit with the parser of the calling thread, so classes of JDT are
+   * loaded and its parser is initialized before the first source code arrives. Metrics and the
+   * method body cache are not affected.
+   */
+  void warmUp() {
+    char[] src = WARM_UP_SOURCE.toCharArray();
+    boolean ignoreMethodBodies = bodyExtraction == ASTContext.BodyExtraction.NONE;
+    CompilationUnit unit = parsers.get().parse(src, ignoreMethodBodies);
+    new ASTCompilation(unit, new Tree(""), new ASTContext(src, bodyExtraction)).getTree();
   }
 
   private void parseSourcecodeAndWriteSyntaxTree(char[] src, String outputPath) {
     File outputFile = new File(outputPath);
-    parseSourcecodeAndWriteSyntaxTree(src, outputFile);
+    writeASTAsFileTree(parseSourcecode(src), outputFile);
+  }
+
+  /**
+   * Return the stamp of the output format which is recorded in an index of extracted blobs. The
+   * charset is always recorded because the default charset depends on the platform.
+   *
+   * @param format
+   *          name of the output format
+   * @param layout
+   *          name of the layout of syntax tree files, or null if the format has no layout
+   * @return stamp of the output format
+   */
+  String getFormatStamp(String format, String layout) {
+    StringBuilder stamp = new StringBuilder();
+    stamp.append(FORMAT_VERSION).append(" ").append(format);
+    if (layout != null) {
+      stamp.append(" ").append(layout);
+    }
+    if (bodyExtraction != ASTContext.BodyExtraction.FLATTEN) {
+      stamp.append(" ").append(bodyExtraction.name().toLowerCase(Locale.ENGLISH));
+    }
+    if (!profile.getName().equals(ParserProfile.DEFAULT_NAME)) {
+      stamp.append(" ").append(profile.getName());
+    }
+    stamp.append(" ").append(charset.name().toLowerCase(Locale.ENGLISH));
+    return stamp.toString();
+  }
+
+  private SyntaxTreeOutput createOutput(String format, String layout, long segmentSize,
+      FanoutLayout fanout, File syntaxTreeDir) throws IOException {
+    if (format.equals(FORMAT_GIT)) {
+      return new GitObjectOutput(syntaxTreeDir, System.out);
+    } else if (layout.equals(LAYOUT_PACKED)) {
+      return new PackedOutput(syntaxTreeDir, format.equals(FORMAT_BINARY), segmentSize);
+    } else if (format.equals(FORMAT_BINARY)) {
+      return new BinaryFileOutput(syntaxTreeDir, fanout);
+    }
+    return new TextFileOutput(syntaxTreeDir, fanout);
   }
 
-  private void parseSourcecodeAndWriteSyntaxTree(char[] src, File outputFile) {
-    parseSourcecode(src);
-    writeASTAsFileTree(outputFile);
+  /**
+   * Return the fan-out layout of the --layout and --fanout-depth options.
+   */
+  private static FanoutLayout getFanoutLayout(Options options) {
+    if (!options.get("layout", LAYOUT_FLAT).equals(LAYOUT_FANOUT)) {
+      return new FanoutLayout(0);
+    }
+    return new FanoutLayout(options.getInt("fanout-depth", 1));
   }
 
-  private void parseBlobs(String repositoryPath, String syntaxTreeDirPath) {
+  /**
+   * Return the stamp of syntax tree files in a fan-out layout.
+   */
+  private String getFileFormatStamp(String format, FanoutLayout fanout) {
+    if (fanout.getDepth() == 0) {
+      return getFormatStamp(format, LAYOUT_FLAT);
+    }
+    return getFormatStamp(format, LAYOUT_FANOUT + "-" + fanout.getDepth());
+  }
+
+  /**
+   * Move syntax tree files to a fan-out layout. The stamp of the index of extracted blobs is
+   * replaced, so the next run keeps skipping the moved syntax trees.
+   */
+  private void migrate(String syntaxTreeDirPath, FanoutLayout fanout, String format,
+      String indexPath) {
+    File syntaxTreeDir = new File(syntaxTreeDirPath);
+    try {
+      int moved = fanout.migrate(syntaxTreeDir);
+      System.out.println(moved + " files are moved");
+
+      File indexFile;
+      if (indexPath == null || indexPath.isEmpty()) {
+        indexFile = new File(syntaxTreeDir, ExtractedBlobIndex.DEFAULT_FILE_NAME);
+      } else {
+        indexFile = new File(indexPath);
+      }
+      List<String> oldStamps = new ArrayList<String>();
+      for (int depth = 0; depth <= FanoutLayout.MAX_DEPTH; depth++) {
+        oldStamps.add(getFileFormatStamp(format, new FanoutLayout(depth)));
+      }
+      if (ExtractedBlobIndex.restamp(indexFile, oldStamps, getFileFormatStamp(format, fanout))) {
+        System.out.println(indexFile + " is updated");
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void parseBlobs(String repositoryPath, String syntaxTreeDirPath, int numThreads,
+      Options options) {
+    String format = options.get("format", FORMAT_TEXT);
+    if (!format.equals(FORMAT_TEXT) && !format.equals(FORMAT_GIT)
+        && !format.equals(FORMAT_BINARY)) {
+      System.out.println("unknown format: " + format);
+      printUsage();
+      return;
+    }
+    String layout = options.get("layout", LAYOUT_FLAT);
+    if (!layout.equals(LAYOUT_FLAT) && !layout.equals(LAYOUT_FANOUT)
+        && !layout.equals(LAYOUT_PACKED)) {
+      System.out.println("unknown layout: " + layout);
+      printUsage();
+      return;
+    }
+    long segmentSize = PackedOutput.DEFAULT_SEGMENT_SIZE;
+    long maxInFlightBytes = BlobExtractor.DEFAULT_MAX_IN_FLIGHT_BYTES;
+    FanoutLayout fanout;
+    int loadThreads;
+    int writeThreads;
+    try {
+      if (options.has("segment-size")) {
+        segmentSize = options.getInt("segment-size", 0) * (1L << 20);
+      }
+      if (options.has("max-in-flight")) {
+        maxInFlightBytes = options.getInt("max-in-flight", 0) * (1L << 20);
+      }
+      loadThreads = options.getInt("load-threads", BlobExtractor.DEFAULT_LOAD_THREADS);
+      writeThreads = options.getInt("write-threads", BlobExtractor.DEFAULT_WRITE_THREADS);
+      fanout = getFanoutLayout(options);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      printUsage();
+      return;
+    }
+    String indexPath = options.get("index", null);
+
     File repoDir = new File(repositoryPath);
+    File syntaxTreeDir = new File(syntaxTreeDirPath);
     try {
       Repository repo = new FileRepository(repoDir);
 
+      // syntax tree files of another layout are not found where the index says they are.
+      String stamp;
+      if (format.equals(FORMAT_GIT)) {
+        stamp = getFormatStamp(format, null);
+      } else if (layout.equals(LAYOUT_PACKED)) {
+        stamp = getFormatStamp(format, LAYOUT_PACKED);
+      } else {
+        stamp = getFileFormatStamp(format, fanout);
+      }
+
+      SyntaxTreeOutput output = createOutput(format, layout, segmentSize, fanout,
+          syntaxTreeDir);
+
+      ExtractedBlobIndex index;
+      if (indexPath == null) {
+        index = new ExtractedBlobIndex();
+      } else if (indexPath.isEmpty()) {
+        File indexFile = new File(syntaxTreeDir, ExtractedBlobIndex.DEFAULT_FILE_NAME);
+        index = ExtractedBlobIndex.open(indexFile, stamp);
+      } else {
+        index = ExtractedBlobIndex.open(new File(indexPath), stamp);
+      }
+      if (output instanceof PackedOutput) {
+        // blob ids may be in the index file before their buffered records reach the segments,
+        // and syntax trees of earlier runs are skipped even without an index file.
+        index.setExtracted(((PackedOutput) output).getBlobIds());
+      }
       BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-      String line;
-      while ( (line = br.readLine()) != null) {
-        root = new Tree("");
+      BlobExtractor extractor = new BlobExtractor(this, repo, output, numThreads, index,
+          loadThreads, writeThreads, maxInFlightBytes);
+      if (options.has("sort-input")) {
+        extractor.setPackOrder(new PackOrder(repo));
+      }
+      try {
+        extractor.extract(br);
+      } finally {
+        output.close();
+        index.close();
+        repo.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+  }
 
-        ObjectId obj = ObjectId.fromString(line);
-        ObjectLoader loader = repo.open(obj);
+  private void extractWorkingTree(String workingTreePath, String syntaxTreeDirPath,
+      int numThreads, String format, boolean watch, int pollInterval, int debounce) {
+    File workingTree = new File(workingTreePath).getAbsoluteFile();
+    File syntaxTreeDir = new File(syntaxTreeDirPath).getAbsoluteFile();
+    for (File dir = syntaxTreeDir; dir != null; dir = dir.getParentFile()) {
+      if (dir.equals(workingTree)) {
+        System.out.println("syntax trees directory must be outside of the working tree");
+        return;
+      }
+    }
 
-        char[] src = IOUtils.toCharArray(loader.openStream());
-        File outputFile = new File(syntaxTreeDirPath, line);
-        parseSourcecodeAndWriteSyntaxTree(src, outputFile);
+    SyntaxTreeOutput output;
+    if (format.equals(FORMAT_BINARY)) {
+      output = new BinaryFileOutput(syntaxTreeDir);
+    } else if (format.equals(FORMAT_DIR)) {
+      output = new DirectoryOutput(syntaxTreeDir);
+    } else {
+      output = new TextFileOutput(syntaxTreeDir);
+    }
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(this, workingTree, output,
+        numThreads);
+    try {
+      if (watch) {
+        new WorkingTreeWatcher(extractor, workingTree, syntaxTreeDir, System.out, pollInterval,
+            debounce).watch();
+      } else {
+        extractor.extract();
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        output.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void parseHistory(String repositoryPath, String targetRepositoryPath, int numThreads,
+      Options options) {
+    try {
+      Repository repo = new FileRepository(new File(repositoryPath));
+      GitObjectOutput output = new GitObjectOutput(new File(targetRepositoryPath), System.out);
+      try {
+        HistoryExtractor extractor = new HistoryExtractor(this, repo, output.getRepository(),
+            System.out, numThreads);
+        if (options.get("mode", MODE_BLOBS).equals(MODE_INCREMENTAL)) {
+          ObjectId head = resolve(repo, options.get("branch", Constants.HEAD));
+          ObjectId since = null;
+          if (options.has("since")) {
+            since = resolve(repo, options.get("since", null));
+          }
+          extractor.extractBranch(head, since, options.has("detect-renames"));
+        } else {
+          extractor.extract();
+        }
+      } finally {
+        output.close();
+        repo.close();
       }
     } catch (IOException e) {
       e.printStackTrace();
     }
+  }
 
+  private MetricsReporter startMetricsReporter(Options options) throws IOException {
+    if (!options.has("metrics")) {
+      return null;
+    }
+    String path = options.get("metrics", "");
+    MetricsReporter reporter;
+    if (path.isEmpty()) {
+      reporter = new MetricsReporter(metrics, System.err);
+    } else {
+      reporter = new MetricsReporter(metrics, new File(path));
+    }
+    int interval = options.getInt("metrics-interval", 0);
+    if (interval > 0) {
+      reporter.start(interval);
+    }
+    reporter.addShutdownHook();
+    return reporter;
   }
 
-  public void writeASTAsFileTree(File outputFile) {
+  private void serve(int numThreads) {
+    ParseDaemon daemon = new ParseDaemon(this, System.in, System.out, numThreads);
+    try {
+      daemon.serve();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private ObjectId resolve(Repository repo, String revision) throws IOException {
+    ObjectId id = repo.resolve(revision);
+    if (id == null) {
+      throw new IOException("unknown revision: " + revision);
+    }
+    return id;
+  }
+
+  public void writeASTAsFileTree(ASTCompilation compilation, File outputFile) {
     try {
       TreeWriter writer = new TextFormatTreeWriter(outputFile);
       writer.writeTree(compilation.getTree());
@@ -79,24 +571,147 @@ public class GitTreeCreator {
     }
   }
 
+  private static void printUsage() {
+    System.out.println("Usage(1): path_of_output_file");
+    System.out.println("Usage(2); [--threads=N] [--index[=path_of_index_file]]"
+        + " [--format=text|binary] [--layout=flat|fanout|packed] [--fanout-depth=N]"
+        + " [--segment-size=MiB] [--load-threads=N] [--write-threads=N] [--max-in-flight=MiB]"
+        + " [--sort-input]"
+        + " path_of_git_repository path_of_syntax_trees_dir");
+    System.out.println("Usage(3); [--threads=N] [--index[=path_of_index_file]] --format=git"
+        + " path_of_git_repository path_of_target_repository");
+    System.out.println("Usage(4); [--threads=N] --mode=history"
+        + " path_of_git_repository path_of_target_repository");
+    System.out.println("Usage(5); [--threads=N] --mode=incremental [--branch=revision]"
+        + " [--since=revision] [--detect-renames]"
+        + " path_of_git_repository path_of_target_repository");
+    System.out.println("Usage(6); [--threads=N] --mode=daemon");
+    System.out.println("Usage(7); --mode=migrate [--layout=flat|fanout] [--fanout-depth=N]"
+        + " [--format=text|binary] [--index=path_of_index_file] path_of_syntax_trees_dir");
+    System.out.println("Usage(8); [--threads=N] --mode=worktree [--format=text|binary|dir]"
+        + " path_of_working_tree path_of_syntax_trees_dir");
+    System.out.println("Usage(9); [--threads=N] --mode=watch [--format=text|binary|dir]"
+        + " [--poll-interval=ms] [--debounce=ms] path_of_working_tree path_of_syntax_trees_dir");
+    System.out.println("Options of (1)-(9); [--body=flatten|source|normalized|none]"
+        + " [--profile=default|java7] [--encoding=charset] [--method-cache=MiB]");
+    System.out.println("Options of (2)-(6), (8), (9); [--metrics[=path_of_metrics_file]]"
+        + " [--metrics-interval=seconds]");
+  }
+
   public static void main(String[] args) {
-    if (args.length > 2) {
-      System.out.println("Usage(1): path_of_output_file");
-      System.out.println("Usage(2); path_of_git_repository path_of_syntax_trees_dir");
+    Options options = Options.parse(args);
+    List<String> arguments = options.getArguments();
+    String mode = options.get("mode", MODE_BLOBS);
+    GitTreeCreator creator = new GitTreeCreator();
+    int numThreads;
+    try {
+      numThreads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+      creator.setBodyExtraction(toBodyExtraction(options.get("body", "flatten")));
+      creator.setParserProfile(ParserProfile.forName(options.get("profile",
+          ParserProfile.DEFAULT_NAME)));
+      if (options.has("encoding")) {
+        creator.setCharset(Charset.forName(options.get("encoding", null)));
+      }
+      if (options.has("method-cache")) {
+        // ids are only used when syntax trees are stored as git objects.
+        boolean idsEnabled = options.get("format", FORMAT_TEXT).equals(FORMAT_GIT)
+            || mode.equals(MODE_HISTORY) || mode.equals(MODE_INCREMENTAL);
+        long maxSize = options.getInt("method-cache", 0) * (1L << 20);
+        creator.setMethodBodyCache(new MethodBodyCache(maxSize, idsEnabled));
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      printUsage();
       return;
     }
 
-    GitTreeCreator creator = new GitTreeCreator();
-
-    if (args.length == 1) {
+    if (arguments.size() == 1 && mode.equals(MODE_BLOBS)) {
       try {
-        char[] src = IOUtils.toCharArray(System.in);
-        creator.parseSourcecodeAndWriteSyntaxTree(src, args[0]);
+        byte[] bytes = IOUtils.toByteArray(System.in);
+        BlobDecoder decoder = creator.getDecoder();
+        decoder.decode(bytes, 0, bytes.length);
+        creator.parseSourcecodeAndWriteSyntaxTree(decoder.toArray(), arguments.get(0));
       } catch (IOException e) {
         e.printStackTrace();
       }
-    } else {
-      creator.parseBlobs(args[0], args[1]);
+      return;
+    }
+
+    MetricsReporter reporter;
+    try {
+      reporter = creator.startMetricsReporter(options);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      printUsage();
+      return;
     }
+    try {
+      creator.run(mode, arguments, numThreads, options);
+    } finally {
+      if (reporter != null) {
+        reporter.finish();
+      }
+    }
+  }
+
+  private void run(String mode, List<String> arguments, int numThreads, Options options) {
+    if (mode.equals(MODE_DAEMON) && arguments.isEmpty()) {
+      serve(numThreads);
+      return;
+    } else if (mode.equals(MODE_MIGRATE) && arguments.size() == 1) {
+      String format = options.get("format", FORMAT_TEXT);
+      if (!format.equals(FORMAT_TEXT) && !format.equals(FORMAT_BINARY)) {
+        System.out.println("unknown format: " + format);
+        printUsage();
+        return;
+      }
+      try {
+        migrate(arguments.get(0), getFanoutLayout(options), format, options.get("index", null));
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        printUsage();
+      }
+      return;
+    }
+
+    if (arguments.size() != 2) {
+      printUsage();
+      return;
+    }
+
+    if (mode.equals(MODE_HISTORY) || mode.equals(MODE_INCREMENTAL)) {
+      parseHistory(arguments.get(0), arguments.get(1), numThreads, options);
+      return;
+    } else if (mode.equals(MODE_WORKTREE) || mode.equals(MODE_WATCH)) {
+      String format = options.get("format", FORMAT_TEXT);
+      if (!format.equals(FORMAT_TEXT) && !format.equals(FORMAT_BINARY)
+          && !format.equals(FORMAT_DIR)) {
+        System.out.println("unknown format: " + format);
+        printUsage();
+        return;
+      }
+      int pollInterval;
+      int debounce;
+      try {
+        pollInterval = options.getInt("poll-interval", WorkingTreeWatcher.DEFAULT_POLL_INTERVAL);
+        debounce = options.getInt("debounce", WorkingTreeWatcher.DEFAULT_DEBOUNCE);
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        printUsage();
+        return;
+      }
+      extractWorkingTree(arguments.get(0), arguments.get(1), numThreads, format,
+          mode.equals(MODE_WATCH), pollInterval, debounce);
+      return;
+    } else if (!mode.equals(MODE_BLOBS)) {
+      System.out.println("unknown mode: " + mode);
+      printUsage();
+      return;
+    }
+
+    parseBlobs(arguments.get(0), arguments.get(1), numThreads, options);
   }
 }
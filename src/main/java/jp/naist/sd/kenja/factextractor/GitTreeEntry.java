@@ -0,0 +1,123 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.TreeFormatter;
+
+/**
+ * An entry of a git tree object.
+ */
+class GitTreeEntry {
+  /**
+   * formatter of each thread, which computes ids of objects without inserting them.
+   */
+  private static final ThreadLocal<ObjectInserter.Formatter> FORMATTERS =
+      new ThreadLocal<ObjectInserter.Formatter>() {
+        @Override
+        protected ObjectInserter.Formatter initialValue() {
+          return new ObjectInserter.Formatter();
+        }
+      };
+
+  /**
+   * id of the tree which has no entry.
+   */
+  static final ObjectId EMPTY_TREE_ID = new ObjectInserter.Formatter().idFor(
+      Constants.OBJ_TREE, new byte[0]);
+
+  /**
+   * Order of entries in a git tree.
+   */
+  private static final Comparator<GitTreeEntry> ORDER = new Comparator<GitTreeEntry>() {
+    @Override
+    public int compare(GitTreeEntry o1, GitTreeEntry o2) {
+      byte[] key1 = o1.sortKey;
+      byte[] key2 = o2.sortKey;
+      for (int i = 0; i < key1.length && i < key2.length; i++) {
+        int diff = (key1[i] & 0xff) - (key2[i] & 0xff);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return key1.length - key2.length;
+    }
+  };
+
+  private String name;
+
+  private FileMode mode;
+
+  private ObjectId id;
+
+  /**
+   * the name as git compares it. Names of trees are compared as if they end with '/'.
+   */
+  private byte[] sortKey;
+
+  public GitTreeEntry(String name, FileMode mode, ObjectId id) {
+    this.name = name;
+    this.mode = mode;
+    this.id = id;
+    if (mode == FileMode.TREE) {
+      sortKey = Constants.encode(name + "/");
+    } else {
+      sortKey = Constants.encode(name);
+    }
+  }
+
+  /**
+   * Insert a tree object which consists of entries. The list is sorted in git's order.
+   *
+   * @param inserter
+   *          inserter of the target repository
+   * @param entries
+   *          entries of the tree
+   * @return id of the tree
+   * @throws IOException
+   *           if the tree can not be inserted
+   */
+  public static ObjectId insertTree(ObjectInserter inserter, List<GitTreeEntry> entries)
+      throws IOException {
+    return inserter.insert(format(entries));
+  }
+
+  /**
+   * Compute the id of a tree object which consists of entries without inserting it. The list is
+   * sorted in git's order.
+   *
+   * @param entries
+   *          entries of the tree
+   * @return id of the tree
+   */
+  public static ObjectId idForTree(List<GitTreeEntry> entries) {
+    return FORMATTERS.get().idFor(format(entries));
+  }
+
+  /**
+   * Compute the id of a blob object without inserting it.
+   *
+   * @param body
+   *          content of the blob
+   * @return id of the blob
+   */
+  public static ObjectId idForBlob(byte[] body) {
+    return FORMATTERS.get().idFor(Constants.OBJ_BLOB, body);
+  }
+
+  static TreeFormatter format(List<GitTreeEntry> entries) {
+    Collections.sort(entries, ORDER);
+
+    TreeFormatter formatter = new TreeFormatter();
+    for (GitTreeEntry entry : entries) {
+      formatter.append(entry.name, entry.mode, entry.id);
+    }
+    return formatter;
+  }
+}
@@ -0,0 +1,133 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * A builder of the Historage tree of a commit.
+ *
+ * A source file "dir/Foo.java" is stored as a tree "dir/Foo.java" whose content is the syntax tree
+ * of the file. Syntax trees are given as ids of trees which are already stored in the repository.
+ *
+ * A builder can be reused for the next commit. Ids of directories are kept until a file in them
+ * is changed, so only directories on changed paths are inserted again.
+ */
+public class HistorageTreeBuilder {
+  private Directory root = new Directory();
+
+  /**
+   * Add the syntax tree of a source file.
+   *
+   * @param path
+   *          path of the source file separated by '/'
+   * @param syntaxTreeId
+   *          id of the syntax tree
+   */
+  public void put(String path, ObjectId syntaxTreeId) {
+    Directory dir = root;
+    dir.id = null;
+    int start = 0;
+    int end;
+    while ((end = path.indexOf('/', start)) >= 0) {
+      String name = path.substring(start, end);
+      Directory child = dir.dirs.get(name);
+      if (child == null) {
+        child = new Directory();
+        dir.dirs.put(name, child);
+      }
+      dir = child;
+      dir.id = null;
+      start = end + 1;
+    }
+    dir.files.put(path.substring(start), syntaxTreeId);
+  }
+
+  /**
+   * Remove the syntax tree of a source file. Directories which become empty are removed too.
+   *
+   * @param path
+   *          path of the source file separated by '/'
+   */
+  public void remove(String path) {
+    remove(root, path, 0);
+  }
+
+  /**
+   * Remove a file from a directory.
+   *
+   * @return true if the file was found
+   */
+  private boolean remove(Directory dir, String path, int start) {
+    int end = path.indexOf('/', start);
+    boolean removed;
+    if (end < 0) {
+      removed = dir.files.remove(path.substring(start)) != null;
+    } else {
+      String name = path.substring(start, end);
+      Directory child = dir.dirs.get(name);
+      removed = child != null && remove(child, path, end + 1);
+      if (removed && child.isEmpty()) {
+        dir.dirs.remove(name);
+      }
+    }
+    if (removed) {
+      dir.id = null;
+    }
+    return removed;
+  }
+
+  /**
+   * Insert tree objects of all directories.
+   *
+   * @param inserter
+   *          inserter of the target repository
+   * @return id of the root tree
+   * @throws IOException
+   *           if a tree can not be inserted
+   */
+  public ObjectId insert(ObjectInserter inserter) throws IOException {
+    return insert(inserter, root);
+  }
+
+  private ObjectId insert(ObjectInserter inserter, Directory dir) throws IOException {
+    if (dir.id != null) {
+      return dir.id;
+    }
+
+    List<GitTreeEntry> entries = new ArrayList<GitTreeEntry>();
+    for (Map.Entry<String, ObjectId> file : dir.files.entrySet()) {
+      entries.add(new GitTreeEntry(file.getKey(), FileMode.TREE, file.getValue()));
+    }
+    for (Map.Entry<String, Directory> child : dir.dirs.entrySet()) {
+      ObjectId childId = insert(inserter, child.getValue());
+      entries.add(new GitTreeEntry(child.getKey(), FileMode.TREE, childId));
+    }
+    dir.id = GitTreeEntry.insertTree(inserter, entries);
+    return dir.id;
+  }
+
+  /**
+   * A directory of source files.
+   */
+  private static class Directory {
+    private Map<String, Directory> dirs = new HashMap<String, Directory>();
+
+    private Map<String, ObjectId> files = new HashMap<String, ObjectId>();
+
+    /**
+     * id of the tree which was inserted last. null if the directory is changed after that.
+     */
+    private ObjectId id;
+
+    private boolean isEmpty() {
+      return dirs.isEmpty() && files.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Extract Historage trees of commits in a repository.
+ *
+ * Each Java file is parsed only once per blob, and its syntax tree is reused for every commit
+ * which contains the same blob. For each commit, a line of the commit id and the id of its
+ * Historage tree is printed.
+ *
+ * extract visits all commits reachable from any ref and lists all files of each commit.
+ * extractBranch follows the first parents of a branch and only looks at files which differ from
+ * the parent, so its cost depends on the number of changed files rather than the size of the
+ * repository.
+ */
+public class HistoryExtractor {
+  /**
+   * extension of Java source files.
+   */
+  private static final String JAVA_EXTENSION = ".java";
+
+  private GitTreeCreator creator;
+
+  private Repository repo;
+
+  private Repository targetRepo;
+
+  private PrintStream mapping;
+
+  private int numThreads;
+
+  /**
+   * map of blob id and id of its syntax tree.
+   */
+  private Map<ObjectId, ObjectId> syntaxTrees = new HashMap<ObjectId, ObjectId>();
+
+  /**
+   * ids of syntax tree objects stored in the target repository by this extractor. Subtrees which
+   * are shared by syntax trees, such as unchanged methods, are inserted only once.
+   */
+  private Set<ObjectId> storedIds = Collections.newSetFromMap(
+      new ConcurrentHashMap<ObjectId, Boolean>());
+
+  /**
+   * Create a HistoryExtractor.
+   *
+   * @param creator
+   *          GitTreeCreator which parses source code
+   * @param repo
+   *          repository whose history is extracted
+   * @param targetRepo
+   *          repository where Historage trees are stored
+   * @param mapping
+   *          stream where "commit-id tree-id" lines are printed
+   * @param numThreads
+   *          number of threads which parse blobs of a commit
+   */
+  public HistoryExtractor(GitTreeCreator creator, Repository repo, Repository targetRepo,
+      PrintStream mapping, int numThreads) {
+    this.creator = creator;
+    this.repo = repo;
+    this.targetRepo = targetRepo;
+    this.mapping = mapping;
+    this.numThreads = Math.max(numThreads, 1);
+  }
+
+  /**
+   * Extract Historage trees of all commits.
+   *
+   * @throws IOException
+   *           if the repository can not be read or the target repository can not be written
+   */
+  public void extract() throws IOException {
+    RevWalk walk = new RevWalk(repo);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      markAllRefs(walk);
+      walk.sort(RevSort.TOPO);
+      walk.sort(RevSort.REVERSE, true);
+      for (RevCommit commit : walk) {
+        ObjectId treeId = extractCommit(commit, executor);
+        mapping.println(commit.name() + " " + treeId.name());
+      }
+    } finally {
+      executor.shutdown();
+      walk.release();
+      mapping.flush();
+    }
+  }
+
+  /**
+   * Extract Historage trees of the first-parent history of a branch.
+   *
+   * @param head
+   *          the last commit to be extracted
+   * @param since
+   *          a commit which is already extracted, or null to extract from the root commit. The
+   *          history is extracted until this commit is reached.
+   * @param detectRenames
+   *          true if renamed files are detected. The syntax tree of a renamed file is reused.
+   * @throws IOException
+   *           if the repository can not be read or the target repository can not be written
+   */
+  public void extractBranch(ObjectId head, ObjectId since, boolean detectRenames)
+      throws IOException {
+    RevWalk walk = new RevWalk(repo);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<RevCommit> commits = listFirstParents(walk, head, since);
+      HistorageTreeBuilder builder = new HistorageTreeBuilder();
+      RevCommit parent = null;
+      if (since != null) {
+        parent = walk.parseCommit(since);
+        putFiles(builder, listJavaFiles(parent), executor);
+      }
+
+      for (RevCommit commit : commits) {
+        if (parent == null) {
+          putFiles(builder, listJavaFiles(commit), executor);
+        } else {
+          applyChanges(builder, diffJavaFiles(parent, commit, detectRenames), executor);
+        }
+        ObjectId treeId = insert(builder);
+        mapping.println(commit.name() + " " + treeId.name());
+        parent = commit;
+      }
+    } finally {
+      executor.shutdown();
+      walk.release();
+      mapping.flush();
+    }
+  }
+
+  /**
+   * Return first parents of head until since, oldest first.
+   */
+  private List<RevCommit> listFirstParents(RevWalk walk, ObjectId head, ObjectId since)
+      throws IOException {
+    LinkedList<RevCommit> commits = new LinkedList<RevCommit>();
+    RevCommit commit = walk.parseCommit(head);
+    while (!commit.equals(since)) {
+      commits.addFirst(commit);
+      if (commit.getParentCount() == 0) {
+        break;
+      }
+      commit = walk.parseCommit(commit.getParent(0));
+    }
+    return commits;
+  }
+
+  private void putFiles(HistorageTreeBuilder builder, Map<String, ObjectId> files,
+      ExecutorService executor) throws IOException {
+    parseBlobs(new LinkedHashSet<ObjectId>(files.values()), executor);
+    for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+      put(builder, file.getKey(), file.getValue());
+    }
+  }
+
+  private void applyChanges(HistorageTreeBuilder builder, List<DiffEntry> changes,
+      ExecutorService executor) throws IOException {
+    Set<ObjectId> blobIds = new LinkedHashSet<ObjectId>();
+    for (DiffEntry change : changes) {
+      if (change.getChangeType() != ChangeType.DELETE && isJavaBlob(change)) {
+        blobIds.add(change.getNewId().toObjectId());
+      }
+    }
+    parseBlobs(blobIds, executor);
+
+    for (DiffEntry change : changes) {
+      if (change.getChangeType() == ChangeType.DELETE
+          || change.getChangeType() == ChangeType.RENAME) {
+        builder.remove(change.getOldPath());
+      }
+      if (change.getChangeType() != ChangeType.DELETE) {
+        if (isJavaBlob(change)) {
+          put(builder, change.getNewPath(), change.getNewId().toObjectId());
+        } else {
+          builder.remove(change.getNewPath());
+        }
+      }
+    }
+  }
+
+  private void put(HistorageTreeBuilder builder, String path, ObjectId blobId) {
+    ObjectId syntaxTreeId = syntaxTrees.get(blobId);
+    // a syntax tree without entries, or of a blob which failed to parse, is not added.
+    if (syntaxTreeId.equals(GitTreeEntry.EMPTY_TREE_ID)) {
+      builder.remove(path);
+    } else {
+      builder.put(path, syntaxTreeId);
+    }
+  }
+
+  /**
+   * Return changed files between a commit and its parent. Files which are Java files in neither
+   * of the commits are not returned.
+   */
+  private List<DiffEntry> diffJavaFiles(RevCommit parent, RevCommit commit,
+      boolean detectRenames) throws IOException {
+    List<DiffEntry> changes;
+    TreeWalk treeWalk = new TreeWalk(repo);
+    try {
+      treeWalk.addTree(parent.getTree());
+      treeWalk.addTree(commit.getTree());
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(TreeFilter.ANY_DIFF);
+      changes = DiffEntry.scan(treeWalk);
+    } finally {
+      treeWalk.release();
+    }
+
+    if (detectRenames) {
+      RenameDetector detector = new RenameDetector(repo);
+      detector.addAll(changes);
+      changes = detector.compute();
+    }
+
+    List<DiffEntry> result = new ArrayList<DiffEntry>();
+    for (DiffEntry change : changes) {
+      if (isJavaFile(change.getOldPath()) || isJavaFile(change.getNewPath())) {
+        result.add(change);
+      }
+    }
+    return result;
+  }
+
+  private boolean isJavaFile(String path) {
+    return path.endsWith(JAVA_EXTENSION);
+  }
+
+  /**
+   * Return True if the new file of a change is a Java file. Symbolic links and submodules are
+   * not Java files even if their names end with ".java".
+   */
+  private boolean isJavaBlob(DiffEntry change) {
+    return isJavaFile(change.getNewPath()) && isRegularFile(change.getNewMode());
+  }
+
+  private boolean isRegularFile(FileMode mode) {
+    return mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE;
+  }
+
+  private ObjectId insert(HistorageTreeBuilder builder) throws IOException {
+    ObjectInserter inserter = targetRepo.newObjectInserter();
+    try {
+      ObjectId treeId = builder.insert(inserter);
+      inserter.flush();
+      return treeId;
+    } finally {
+      inserter.release();
+    }
+  }
+
+  private void markAllRefs(RevWalk walk) throws IOException {
+    for (Ref ref : repo.getAllRefs().values()) {
+      if (ref.getObjectId() == null) {
+        continue;
+      }
+      try {
+        walk.markStart(walk.parseCommit(ref.getObjectId()));
+      } catch (IncorrectObjectTypeException e) {
+        // refs to trees or blobs do not have history.
+        continue;
+      }
+    }
+  }
+
+  private ObjectId extractCommit(RevCommit commit, ExecutorService executor)
+      throws IOException {
+    Map<String, ObjectId> files = listJavaFiles(commit);
+    parseBlobs(new LinkedHashSet<ObjectId>(files.values()), executor);
+
+    HistorageTreeBuilder builder = new HistorageTreeBuilder();
+    for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+      put(builder, file.getKey(), file.getValue());
+    }
+    return insert(builder);
+  }
+
+  /**
+   * Return all Java files in a commit.
+   *
+   * @return map of path and blob id
+   */
+  private Map<String, ObjectId> listJavaFiles(RevCommit commit) throws IOException {
+    Map<String, ObjectId> files = new HashMap<String, ObjectId>();
+    TreeWalk treeWalk = new TreeWalk(repo);
+    try {
+      treeWalk.addTree(commit.getTree());
+      treeWalk.setRecursive(true);
+      while (treeWalk.next()) {
+        if (isRegularFile(treeWalk.getFileMode(0)) && isJavaFile(treeWalk.getPathString())) {
+          files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+        }
+      }
+    } finally {
+      treeWalk.release();
+    }
+    return files;
+  }
+
+  /**
+   * Parse blobs which are not parsed yet and store their syntax trees.
+   */
+  private void parseBlobs(Set<ObjectId> blobIds, ExecutorService executor) throws IOException {
+    List<ObjectId> newBlobIds = new ArrayList<ObjectId>();
+    List<Callable<ObjectId>> tasks = new ArrayList<Callable<ObjectId>>();
+    for (ObjectId blobId : blobIds) {
+      if (!syntaxTrees.containsKey(blobId)) {
+        newBlobIds.add(blobId);
+        tasks.add(new ParseTask(blobId));
+      }
+    }
+    if (tasks.isEmpty()) {
+      return;
+    }
+
+    try {
+      List<Future<ObjectId>> results = executor.invokeAll(tasks);
+      for (int i = 0; i < results.size(); i++) {
+        syntaxTrees.put(newBlobIds.get(i), results.get(i).get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while parsing blobs", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("failed to parse a blob", e.getCause());
+    }
+  }
+
+  /**
+   * A task which parses a blob and stores its syntax tree in the target repository. A blob which
+   * fails to parse is counted as a failure and mapped to the empty tree, so that the rest of the
+   * history is still extracted.
+   */
+  private class ParseTask implements Callable<ObjectId> {
+    private ObjectId blobId;
+
+    public ParseTask(ObjectId blobId) {
+      this.blobId = blobId;
+    }
+
+    @Override
+    public ObjectId call() throws IOException {
+      Metrics metrics = creator.getMetrics();
+      long start = System.nanoTime();
+      ObjectLoader loader = repo.open(blobId);
+      BlobDecoder decoder = creator.getDecoder();
+      decoder.decode(loader);
+      metrics.record(Metrics.Stage.LOAD, start);
+      metrics.addSource(loader.getSize());
+
+      Tree tree;
+      try {
+        tree = creator.parseSourcecode(decoder.toArray()).getTree();
+      } catch (RuntimeException e) {
+        metrics.addFailure();
+        e.printStackTrace();
+        return GitTreeEntry.EMPTY_TREE_ID;
+      } catch (StackOverflowError e) {
+        // deeply nested source code, whose file is recorded with an empty syntax tree.
+        metrics.addFailure();
+        e.printStackTrace();
+        return GitTreeEntry.EMPTY_TREE_ID;
+      }
+
+      start = System.nanoTime();
+      ObjectInserter inserter = targetRepo.newObjectInserter();
+      try {
+        GitObjectTreeWriter writer = new GitObjectTreeWriter(inserter, storedIds);
+        writer.writeTree(tree);
+        metrics.addBytesOut(writer.getBytesWritten());
+        metrics.record(Metrics.Stage.WRITE, start);
+        return writer.getTreeId();
+      } finally {
+        inserter.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of an extraction run.
+ *
+ * All methods can be called from several threads at once. Latencies are recorded in histograms
+ * whose buckets are powers of two nanoseconds, so percentiles are reported as the upper bound of
+ * the bucket which contains them.
+ */
+public class Metrics {
+
+  /**
+   * Stages of extraction.
+   */
+  public enum Stage {
+    /**
+     * loading source code of a blob or a file.
+     */
+    LOAD,
+
+    /**
+     * parsing source code by ASTParser.
+     */
+    PARSE,
+
+    /**
+     * building a Historage tree by ASTCompilation.
+     */
+    BUILD,
+
+    /**
+     * writing a Historage tree by a TreeWriter.
+     */
+    WRITE
+  }
+
+  /**
+   * A value which is sampled when metrics are reported, such as the length of a queue.
+   */
+  public interface Gauge {
+    public long getValue();
+  }
+
+  private final long startNanos = System.nanoTime();
+
+  /**
+   * gauges by name in the order they were registered.
+   */
+  private final Map<String, Gauge> gauges = new LinkedHashMap<String, Gauge>();
+
+  private final Histogram[] histograms = new Histogram[Stage.values().length];
+
+  private final AtomicLong sources = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  private final AtomicLong bytesIn = new AtomicLong();
+
+  private final AtomicLong bytesOut = new AtomicLong();
+
+  private final AtomicLong classes = new AtomicLong();
+
+  private final AtomicLong methods = new AtomicLong();
+
+  public Metrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  /**
+   * Record the latency of a stage.
+   *
+   * @param stage
+   *          the stage
+   * @param start
+   *          value of System.nanoTime() when the stage started
+   */
+  public void record(Stage stage, long start) {
+    histograms[stage.ordinal()].add(System.nanoTime() - start);
+  }
+
+  /**
+   * Count a loaded source.
+   *
+   * @param bytes
+   *          size of the source in bytes
+   */
+  public void addSource(long bytes) {
+    sources.incrementAndGet();
+    bytesIn.addAndGet(bytes);
+  }
+
+  /**
+   * Count a source which could not be extracted.
+   */
+  public void addFailure() {
+    failures.incrementAndGet();
+  }
+
+  /**
+   * Count bytes written by a TreeWriter.
+   *
+   * @param bytes
+   *          number of written bytes
+   */
+  public void addBytesOut(long bytes) {
+    bytesOut.addAndGet(bytes);
+  }
+
+  /**
+   * Register a gauge. A gauge of the same name is replaced.
+   *
+   * @param name
+   *          name of the gauge in JSON
+   * @param gauge
+   *          gauge
+   */
+  public void register(String name, Gauge gauge) {
+    synchronized (gauges) {
+      gauges.put(name, gauge);
+    }
+  }
+
+  /**
+   * Count classes and methods in a Historage tree.
+   *
+   * @param tree
+   *          root of a Historage tree
+   */
+  public void addTree(Tree tree) {
+    for (Tree child : tree.getChildTrees()) {
+      long numChildren = 0;
+      for (Tree grandChild : child.getChildTrees()) {
+        numChildren++;
+        addTree(grandChild);
+      }
+      if (child.getName().equals("[CN]")) {
+        classes.addAndGet(numChildren);
+      } else if (child.getName().equals("[MT]") || child.getName().equals("[CS]")) {
+        methods.addAndGet(numChildren);
+      }
+    }
+  }
+
+  /**
+   * Return a JSON object of all counters and histograms.
+   *
+   * @param isFinal
+   *          true if the run is finished
+   * @return JSON text in a single line
+   */
+  public String toJson(boolean isFinal) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"final\":").append(isFinal);
+    json.append(",\"timestamp\":").append(System.currentTimeMillis());
+    json.append(",\"elapsedMillis\":").append((System.nanoTime() - startNanos) / 1000000);
+    json.append(",\"sources\":").append(sources.get());
+    json.append(",\"failures\":").append(failures.get());
+    json.append(",\"bytesIn\":").append(bytesIn.get());
+    json.append(",\"bytesOut\":").append(bytesOut.get());
+    json.append(",\"classes\":").append(classes.get());
+    json.append(",\"methods\":").append(methods.get());
+    json.append(",\"stages\":{");
+    for (Stage stage : Stage.values()) {
+      if (stage.ordinal() > 0) {
+        json.append(",");
+      }
+      json.append("\"").append(stage.name().toLowerCase(Locale.ENGLISH)).append("\":");
+      histograms[stage.ordinal()].appendJson(json);
+    }
+    json.append("},\"gauges\":{");
+    synchronized (gauges) {
+      boolean first = true;
+      for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+        if (!first) {
+          json.append(",");
+        }
+        first = false;
+        json.append("\"").append(gauge.getKey()).append("\":").append(gauge.getValue().getValue());
+      }
+    }
+    json.append("}}");
+    return json.toString();
+  }
+
+  /**
+   * A histogram of latencies whose i-th bucket counts latencies less than 2^i nanoseconds.
+   */
+  private static class Histogram {
+    private static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private void add(long nanos) {
+      buckets.incrementAndGet(NUM_BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+      count.incrementAndGet();
+      total.addAndGet(nanos);
+      long currentMax;
+      while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) {
+        continue;
+      }
+    }
+
+    /**
+     * Return the upper bound of the bucket which contains the percentile.
+     */
+    private long percentile(long[] counts, long numSamples, double ratio) {
+      long rank = (long) Math.ceil(numSamples * ratio);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return upperBound(i);
+        }
+      }
+      return 0;
+    }
+
+    private long upperBound(int bucket) {
+      return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    private void appendJson(StringBuilder json) {
+      long[] counts = new long[NUM_BUCKETS];
+      long numSamples = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+        numSamples += counts[i];
+      }
+
+      json.append("{\"count\":").append(count.get());
+      json.append(",\"totalMicros\":").append(total.get() / 1000);
+      json.append(",\"maxMicros\":").append(max.get() / 1000);
+      json.append(",\"p50Micros\":").append(percentile(counts, numSamples, 0.5) / 1000);
+      json.append(",\"p90Micros\":").append(percentile(counts, numSamples, 0.9) / 1000);
+      json.append(",\"p99Micros\":").append(percentile(counts, numSamples, 0.99) / 1000);
+      json.append(",\"histogramNanos\":{");
+      boolean first = true;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        if (counts[i] == 0) {
+          continue;
+        }
+        if (!first) {
+          json.append(",");
+        }
+        first = false;
+        json.append("\"").append(upperBound(i)).append("\":").append(counts[i]);
+      }
+      json.append("}}");
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Dump Metrics as JSON lines, periodically and at the end of a run.
+ *
+ * The final metrics are dumped once, by finish or by a shutdown hook when the process is ended by
+ * a signal, as the daemon and watch modes are. A stream given by the caller is flushed and never
+ * closed, so System.err is still usable after the reporter finishes.
+ */
+public class MetricsReporter {
+  private Metrics metrics;
+
+  private PrintWriter out;
+
+  private Timer timer;
+
+  /**
+   * true if out is closed when the reporter finishes.
+   */
+  private boolean closeOnFinish;
+
+  private boolean finished;
+
+  /**
+   * Create a MetricsReporter which writes to a file. Each dump is appended as a line.
+   *
+   * @param metrics
+   *          metrics to be reported
+   * @param file
+   *          output file
+   * @throws IOException
+   *           if the file can not be opened
+   */
+  public MetricsReporter(Metrics metrics, File file) throws IOException {
+    this(metrics, new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+        Charsets.UTF_8)), true);
+  }
+
+  /**
+   * Create a MetricsReporter which writes to a stream such as System.err. The stream is not closed.
+   *
+   * @param metrics
+   *          metrics to be reported
+   * @param stream
+   *          output stream
+   */
+  public MetricsReporter(Metrics metrics, PrintStream stream) {
+    this(metrics, new PrintWriter(new OutputStreamWriter(stream, Charsets.UTF_8)), false);
+  }
+
+  private MetricsReporter(Metrics metrics, PrintWriter out, boolean closeOnFinish) {
+    this.metrics = metrics;
+    this.out = out;
+    this.closeOnFinish = closeOnFinish;
+  }
+
+  /**
+   * Start dumping metrics periodically.
+   *
+   * @param intervalSeconds
+   *          interval of dumps in seconds
+   */
+  public void start(int intervalSeconds) {
+    long intervalMillis = intervalSeconds * 1000L;
+    timer = new Timer("metrics-reporter", true);
+    timer.scheduleAtFixedRate(new TimerTask() {
+      @Override
+      public void run() {
+        report(false);
+      }
+    }, intervalMillis, intervalMillis);
+  }
+
+  /**
+   * Dump the final metrics when the process exits, unless finish is called before.
+   */
+  public void addShutdownHook() {
+    Runtime.getRuntime().addShutdownHook(new Thread("metrics-reporter-shutdown") {
+      @Override
+      public void run() {
+        finish();
+      }
+    });
+  }
+
+  /**
+   * Stop periodic dumps and dump the final metrics. Calls after the first one do nothing.
+   */
+  public synchronized void finish() {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    if (timer != null) {
+      timer.cancel();
+    }
+    report(true);
+    if (closeOnFinish) {
+      out.close();
+    }
+  }
+
+  private synchronized void report(boolean isFinal) {
+    out.println(metrics.toJson(isFinal));
+    out.flush();
+  }
+}
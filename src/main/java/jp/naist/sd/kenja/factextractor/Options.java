@@ -0,0 +1,114 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of GitTreeCreator.
+ *
+ * Options are given as "--name=value" or "--name" and may appear anywhere in the argument list.
+ * All other arguments are kept as positional arguments in their original order.
+ */
+public class Options {
+
+  /**
+   * prefix of an option argument.
+   */
+  private static final String OPTION_PREFIX = "--";
+
+  /**
+   * map of option name and value.
+   */
+  private Map<String, String> values = new HashMap<String, String>();
+
+  /**
+   * positional arguments.
+   */
+  private List<String> arguments = new ArrayList<String>();
+
+  /**
+   * Parse command line arguments.
+   *
+   * @param args
+   *          arguments given to main
+   * @return parsed options
+   */
+  public static Options parse(String[] args) {
+    Options options = new Options();
+    for (String arg : args) {
+      if (arg.startsWith(OPTION_PREFIX) && arg.length() > OPTION_PREFIX.length()) {
+        String option = arg.substring(OPTION_PREFIX.length());
+        int separator = option.indexOf('=');
+        if (separator < 0) {
+          options.values.put(option, "");
+        } else {
+          options.values.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+      } else {
+        options.arguments.add(arg);
+      }
+    }
+    return options;
+  }
+
+  /**
+   * Return positional arguments.
+   *
+   * @return positional arguments
+   */
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  /**
+   * Return True if the option is given.
+   *
+   * @param name
+   *          name of the option
+   * @return the option is given or not
+   */
+  public boolean has(String name) {
+    return values.containsKey(name);
+  }
+
+  /**
+   * Return value of the option.
+   *
+   * @param name
+   *          name of the option
+   * @param defaultValue
+   *          value returned if the option is not given
+   * @return value of the option
+   */
+  public String get(String name, String defaultValue) {
+    if (!values.containsKey(name)) {
+      return defaultValue;
+    }
+    return values.get(name);
+  }
+
+  /**
+   * Return value of the option as int.
+   *
+   * @param name
+   *          name of the option
+   * @param defaultValue
+   *          value returned if the option is not given
+   * @return value of the option
+   * @throws IllegalArgumentException
+   *           if the value is not a number
+   */
+  public int getInt(String name, int defaultValue) {
+    String value = get(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("--" + name + " requires a number: " + value);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.storage.file.PackIndex;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * An order of objects in the pack files of a repository.
+ *
+ * Reading blobs in the order of their offsets in packs makes reads from cold packs mostly
+ * sequential and lets delta bases which were just read stay in the window cache. Packs are
+ * searched like JGit does: packs of the object directory of the repository from the newest, and
+ * then packs of its alternates in the order of objects/info/alternates. Objects which are not in
+ * any pack are placed after packed objects in the given order.
+ */
+public class PackOrder {
+  private static final String PACK_DIR = "pack";
+
+  private static final String ALTERNATES_FILE = "info/alternates";
+
+  private List<PackIndex> packs = new ArrayList<PackIndex>();
+
+  /**
+   * Load the indexes of all pack files of a repository and its alternates.
+   *
+   * @param repo
+   *          repository
+   * @throws IOException
+   *           if an index or alternates can not be read
+   */
+  public PackOrder(Repository repo) throws IOException {
+    File objectsDir;
+    if (repo instanceof FileRepository) {
+      objectsDir = ((FileRepository) repo).getObjectsDirectory();
+    } else {
+      objectsDir = new File(repo.getDirectory(), "objects");
+    }
+    addPacks(objectsDir, new HashSet<File>());
+  }
+
+  /**
+   * Load the indexes of pack files of an object directory and its alternates.
+   *
+   * @param visited
+   *          object directories which are already loaded
+   */
+  private void addPacks(File objectsDir, Set<File> visited) throws IOException {
+    if (!visited.add(objectsDir.getCanonicalFile())) {
+      return;
+    }
+
+    File packDir = new File(objectsDir, PACK_DIR);
+    File[] files = packDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("pack-") && name.endsWith(".idx");
+      }
+    });
+    if (files == null) {
+      files = new File[0];
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file2.lastModified() - file1.lastModified();
+        if (diff != 0) {
+          return diff < 0 ? -1 : 1;
+        }
+        return file1.getName().compareTo(file2.getName());
+      }
+    });
+    for (File file : files) {
+      packs.add(PackIndex.open(file));
+    }
+
+    File alternates = new File(objectsDir, ALTERNATES_FILE);
+    if (!alternates.isFile()) {
+      return;
+    }
+    for (String line : Files.readLines(alternates, Charsets.UTF_8)) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      File alternate = new File(line);
+      if (!alternate.isAbsolute()) {
+        alternate = new File(objectsDir, line);
+      }
+      addPacks(alternate, visited);
+    }
+  }
+
+  /**
+   * Return the number of pack files.
+   *
+   * @return number of packs
+   */
+  public int getPackCount() {
+    return packs.size();
+  }
+
+  /**
+   * Sort object ids by the packs which contain them and their offsets in the packs.
+   *
+   * @param ids
+   *          object ids
+   * @return sorted object ids
+   * @throws IOException
+   *           if an index can not be read
+   */
+  public List<ObjectId> sort(List<ObjectId> ids) throws IOException {
+    List<Position> positions = new ArrayList<Position>(ids.size());
+    for (ObjectId id : ids) {
+      positions.add(locate(id));
+    }
+    // the sort is stable, so loose objects keep the given order.
+    Collections.sort(positions);
+
+    List<ObjectId> result = new ArrayList<ObjectId>(positions.size());
+    for (Position position : positions) {
+      result.add(position.id);
+    }
+    return result;
+  }
+
+  private Position locate(ObjectId id) throws IOException {
+    for (int pack = 0; pack < packs.size(); pack++) {
+      long offset = packs.get(pack).findOffset(id);
+      if (offset >= 0) {
+        return new Position(id, pack, offset);
+      }
+    }
+    return new Position(id, packs.size(), 0);
+  }
+
+  /**
+   * Position of an object in packs.
+   */
+  private static class Position implements Comparable<Position> {
+    private final ObjectId id;
+
+    private final int pack;
+
+    private final long offset;
+
+    public Position(ObjectId id, int pack, long offset) {
+      this.id = id;
+      this.pack = pack;
+      this.offset = offset;
+    }
+
+    @Override
+    public int compareTo(Position other) {
+      if (pack != other.pack) {
+        return pack < other.pack ? -1 : 1;
+      }
+      if (offset != other.offset) {
+        return offset < other.offset ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A SyntaxTreeOutput which appends syntax trees to large segment files and writes a sorted index
+ * of them when it is closed.
+ *
+ * Syntax trees are serialized by worker threads in parallel, and only appending them to the
+ * current segment is serialized. A new segment is started when the current one would exceed the
+ * maximum size. Syntax trees of an earlier run are kept, and a blob whose syntax tree is already
+ * in the segments is not written again. If the index does not describe the
+ * segments because the earlier run was killed, it is rebuilt from record headers in the segments
+ * and a broken record at the end is truncated. See PackedTreeIndex for the file formats.
+ */
+public class PackedOutput implements SyntaxTreeOutput {
+  /**
+   * default maximum size of a segment.
+   */
+  public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+  private static final int RECORD_HEADER_SIZE = Constants.OBJECT_ID_LENGTH + 4;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private File dir;
+
+  private int format;
+
+  private long maxSegmentSize;
+
+  /**
+   * locations of syntax trees in all segments.
+   */
+  private Map<ObjectId, PackedTreeIndex.Location> locations;
+
+  /**
+   * number of the segment which is written.
+   */
+  private int segment;
+
+  private long segmentLength;
+
+  private DataOutputStream out;
+
+  /**
+   * Open the segments in a directory.
+   *
+   * @param dir
+   *          syntax trees directory
+   * @param binary
+   *          true if syntax trees are written by BinaryFormatTreeWriter, false if they are written
+   *          by TextFormatTreeWriter
+   * @param maxSegmentSize
+   *          maximum size of a segment in bytes. A syntax tree larger than it has its own segment.
+   * @throws IOException
+   *           if the segments can not be read, or are written in another format
+   */
+  public PackedOutput(File dir, boolean binary, long maxSegmentSize) throws IOException {
+    this.dir = dir;
+    this.format = binary ? PackedTreeIndex.FORMAT_BINARY : PackedTreeIndex.FORMAT_TEXT;
+    this.maxSegmentSize = maxSegmentSize;
+    dir.mkdirs();
+
+    int numSegments = 0;
+    while (getSegmentFile(numSegments).exists()) {
+      numSegments++;
+    }
+
+    if (numSegments == 0) {
+      locations = new HashMap<ObjectId, PackedTreeIndex.Location>();
+      startSegment(0);
+      return;
+    }
+
+    segment = numSegments - 1;
+    segmentLength = getSegmentFile(segment).length();
+    locations = PackedTreeIndex.load(dir, format, numSegments, segmentLength);
+    if (locations == null) {
+      locations = new HashMap<ObjectId, PackedTreeIndex.Location>();
+      for (int i = 0; i < numSegments; i++) {
+        long length = scanSegment(i);
+        if (i == segment) {
+          truncate(getSegmentFile(i), length);
+          segmentLength = length;
+        }
+      }
+    }
+    out = openSegment(true);
+  }
+
+  private File getSegmentFile(int number) {
+    return new File(dir, PackedTreeIndex.getSegmentName(number));
+  }
+
+  private DataOutputStream openSegment(boolean append) throws IOException {
+    FileOutputStream stream = new FileOutputStream(getSegmentFile(segment), append);
+    return new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+  }
+
+  private void startSegment(int number) throws IOException {
+    segment = number;
+    out = openSegment(false);
+    out.write(PackedTreeIndex.SEGMENT_MAGIC);
+    out.write(format);
+    segmentLength = PackedTreeIndex.SEGMENT_HEADER_SIZE;
+  }
+
+  /**
+   * Read record headers of a segment into locations.
+   *
+   * @return length of the complete records in the segment
+   */
+  private long scanSegment(int number) throws IOException {
+    File file = getSegmentFile(number);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+        BUFFER_SIZE));
+    try {
+      byte[] header = new byte[PackedTreeIndex.SEGMENT_HEADER_SIZE];
+      in.readFully(header);
+      if (!Arrays.equals(Arrays.copyOf(header, PackedTreeIndex.SEGMENT_MAGIC.length),
+          PackedTreeIndex.SEGMENT_MAGIC)) {
+        throw new IOException("not a packed segment: " + file);
+      } else if (header[PackedTreeIndex.SEGMENT_MAGIC.length] != format) {
+        throw new IOException("segment is written in another format: " + file);
+      }
+
+      long fileLength = file.length();
+      long position = header.length;
+      byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+      while (position + RECORD_HEADER_SIZE <= fileLength) {
+        in.readFully(raw);
+        int length = in.readInt();
+        if (length < 0 || position + RECORD_HEADER_SIZE + length > fileLength) {
+          break;
+        }
+        in.skipBytes(length);
+        locations.put(ObjectId.fromRaw(raw), new PackedTreeIndex.Location(number, position
+            + RECORD_HEADER_SIZE, length));
+        position += RECORD_HEADER_SIZE + length;
+      }
+      return position;
+    } finally {
+      in.close();
+    }
+  }
+
+  private void truncate(File file, long length) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(length);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private byte[] serialize(Tree tree) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    if (format == PackedTreeIndex.FORMAT_BINARY) {
+      new BinaryFormatTreeWriter(bytes).writeTree(tree);
+    } else {
+      Writer writer = new OutputStreamWriter(bytes, Charsets.US_ASCII);
+      new TextFormatTreeWriter(writer).writeTree(tree);
+      writer.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Append the syntax tree of a blob to the current segment.
+   *
+   * @return number of written bytes, or 0 if the syntax tree of the blob is already in the
+   *         segments
+   */
+  @Override
+  public long write(String name, Tree tree) throws IOException {
+    ObjectId blobId = ObjectId.fromString(name);
+    synchronized (this) {
+      if (locations.containsKey(blobId)) {
+        return 0;
+      }
+    }
+    byte[] data = serialize(tree);
+
+    synchronized (this) {
+      if (locations.containsKey(blobId)) {
+        return 0;
+      }
+      long recordSize = RECORD_HEADER_SIZE + data.length;
+      if (segmentLength > PackedTreeIndex.SEGMENT_HEADER_SIZE
+          && segmentLength + recordSize > maxSegmentSize) {
+        out.close();
+        startSegment(segment + 1);
+      }
+      blobId.copyRawTo(out);
+      out.writeInt(data.length);
+      out.write(data);
+      locations.put(blobId, new PackedTreeIndex.Location(segment, segmentLength
+          + RECORD_HEADER_SIZE, data.length));
+      segmentLength += recordSize;
+    }
+    return data.length;
+  }
+
+  /**
+   * Return ids of blobs whose syntax trees are in the segments, including syntax trees of earlier
+   * runs.
+   *
+   * @return copy of the blob ids
+   */
+  public synchronized Set<ObjectId> getBlobIds() {
+    return new HashSet<ObjectId>(locations.keySet());
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out == null) {
+      return;
+    }
+    out.close();
+    out = null;
+    PackedTreeIndex.write(dir, format, segment + 1, segmentLength, locations);
+  }
+}
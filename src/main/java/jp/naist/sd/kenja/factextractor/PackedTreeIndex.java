@@ -0,0 +1,324 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A sorted index of syntax trees packed in segment files by PackedOutput.
+ *
+ * <pre>
+ * index   := INDEX_MAGIC format numSegments(int) lastSegmentLength(long) count(int) entry*
+ * entry   := blob-id(20 bytes) segment(int) offset(long) length(int)
+ * segment := SEGMENT_MAGIC format record*
+ * record  := blob-id(20 bytes) length(int) syntax-tree(length bytes)
+ * </pre>
+ *
+ * Entries are sorted by blob id, so the index is memory-mapped and searched by binary search
+ * without loading it. The offset of an entry points to the syntax tree in the segment. Syntax
+ * trees are written by TextFormatTreeWriter if format is 0, or by BinaryFormatTreeWriter if format
+ * is 1.
+ */
+public class PackedTreeIndex {
+  /**
+   * file name of the index in the syntax trees directory.
+   */
+  public static final String INDEX_FILE_NAME = "packed.idx";
+
+  static final byte[] INDEX_MAGIC = {'K', 'P', 'I', 1};
+
+  static final byte[] SEGMENT_MAGIC = {'K', 'P', 'S', 1};
+
+  static final int FORMAT_TEXT = 0;
+
+  static final int FORMAT_BINARY = 1;
+
+  static final int INDEX_HEADER_SIZE = INDEX_MAGIC.length + 1 + 4 + 8 + 4;
+
+  static final int SEGMENT_HEADER_SIZE = SEGMENT_MAGIC.length + 1;
+
+  static final int ENTRY_SIZE = Constants.OBJECT_ID_LENGTH + 4 + 8 + 4;
+
+  /**
+   * Location of a syntax tree in segments.
+   */
+  public static class Location {
+    private final int segment;
+
+    private final long offset;
+
+    private final int length;
+
+    public Location(int segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public int getSegment() {
+      return segment;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return length;
+    }
+  }
+
+  private File dir;
+
+  private ByteBuffer entries;
+
+  private int format;
+
+  private int count;
+
+  private PackedTreeIndex(File dir, ByteBuffer entries, int format, int count) {
+    this.dir = dir;
+    this.entries = entries;
+    this.format = format;
+    this.count = count;
+  }
+
+  /**
+   * Return the file name of a segment.
+   *
+   * @param segment
+   *          number of the segment
+   * @return file name of the segment
+   */
+  public static String getSegmentName(int segment) {
+    return String.format(Locale.ENGLISH, "packed-%06d.seg", segment);
+  }
+
+  /**
+   * Open the index of packed syntax trees by memory mapping.
+   *
+   * @param dir
+   *          syntax trees directory
+   * @return index
+   * @throws IOException
+   *           if the index can not be read, or is larger than 2 GiB
+   */
+  public static PackedTreeIndex open(File dir) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(new File(dir, INDEX_FILE_NAME), "r");
+    try {
+      if (file.length() > Integer.MAX_VALUE) {
+        throw new IOException("packed index is too large to be mapped: " + dir);
+      }
+      MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+          file.length());
+      int format = readHeader(buffer);
+      buffer.position(INDEX_HEADER_SIZE - 4);
+      int count = buffer.getInt();
+      if (buffer.capacity() < INDEX_HEADER_SIZE + (long) count * ENTRY_SIZE) {
+        throw new IOException("broken packed index: " + dir);
+      }
+      return new PackedTreeIndex(dir, buffer, format, count);
+    } finally {
+      file.close();
+    }
+  }
+
+  private static int readHeader(ByteBuffer buffer) throws IOException {
+    byte[] magic = new byte[INDEX_MAGIC.length];
+    if (buffer.capacity() < INDEX_HEADER_SIZE) {
+      throw new IOException("broken packed index");
+    }
+    buffer.get(magic);
+    if (!Arrays.equals(magic, INDEX_MAGIC)) {
+      throw new IOException("not a packed index");
+    }
+    return buffer.get();
+  }
+
+  /**
+   * Return true if syntax trees are written by BinaryFormatTreeWriter.
+   *
+   * @return true if the format is binary, false if it is text
+   */
+  public boolean isBinary() {
+    return format == FORMAT_BINARY;
+  }
+
+  /**
+   * Return the number of syntax trees.
+   *
+   * @return number of entries
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Find the location of the syntax tree of a blob.
+   *
+   * @param blobId
+   *          id of the blob
+   * @return location, or null if the blob is not in the index
+   */
+  public Location find(AnyObjectId blobId) {
+    byte[] key = new byte[Constants.OBJECT_ID_LENGTH];
+    blobId.copyRawTo(key, 0);
+
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      // the index is at most Integer.MAX_VALUE bytes, but the product may overflow before that.
+      int position = (int) (INDEX_HEADER_SIZE + (long) middle * ENTRY_SIZE);
+      int cmp = compare(key, position);
+      if (cmp < 0) {
+        high = middle - 1;
+      } else if (cmp > 0) {
+        low = middle + 1;
+      } else {
+        position += Constants.OBJECT_ID_LENGTH;
+        return new Location(entries.getInt(position), entries.getLong(position + 4),
+            entries.getInt(position + 12));
+      }
+    }
+    return null;
+  }
+
+  private int compare(byte[] key, int position) {
+    for (int i = 0; i < key.length; i++) {
+      int diff = (key[i] & 0xff) - (entries.get(position + i) & 0xff);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Read the syntax tree of a blob.
+   *
+   * @param blobId
+   *          id of the blob
+   * @return syntax tree in the format of the index, or null if the blob is not in the index
+   * @throws IOException
+   *           if the segment can not be read
+   */
+  public byte[] read(AnyObjectId blobId) throws IOException {
+    Location location = find(blobId);
+    if (location == null) {
+      return null;
+    }
+    byte[] data = new byte[location.getLength()];
+    RandomAccessFile segment = new RandomAccessFile(new File(dir,
+        getSegmentName(location.getSegment())), "r");
+    try {
+      segment.seek(location.getOffset());
+      segment.readFully(data);
+    } finally {
+      segment.close();
+    }
+    return data;
+  }
+
+  /**
+   * Read all entries of an index file if it describes the segments. The file is read into memory
+   * instead of being mapped, because write() can not replace a mapped file on some platforms until
+   * the mapping is garbage collected.
+   *
+   * @return entries, or null if the index is missing or does not match the segments
+   */
+  static Map<ObjectId, Location> load(File dir, int format, int numSegments,
+      long lastSegmentLength) throws IOException {
+    File indexFile = new File(dir, INDEX_FILE_NAME);
+    if (!indexFile.exists() || indexFile.length() < INDEX_HEADER_SIZE) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+        indexFile)));
+    try {
+      byte[] magic = new byte[INDEX_MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, INDEX_MAGIC)) {
+        throw new IOException("not a packed index: " + dir);
+      }
+      if (in.read() != format || in.readInt() != numSegments
+          || in.readLong() != lastSegmentLength) {
+        return null;
+      }
+      int count = in.readInt();
+      if (count < 0 || indexFile.length() < INDEX_HEADER_SIZE + (long) count * ENTRY_SIZE) {
+        throw new IOException("broken packed index: " + dir);
+      }
+
+      Map<ObjectId, Location> result = new HashMap<ObjectId, Location>(count * 2);
+      byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+      for (int i = 0; i < count; i++) {
+        in.readFully(raw);
+        result.put(ObjectId.fromRaw(raw), new Location(in.readInt(), in.readLong(),
+            in.readInt()));
+      }
+      return result;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Write an index file sorted by blob id. The file is replaced after it is written completely.
+   */
+  static void write(File dir, int format, int numSegments, long lastSegmentLength,
+      Map<ObjectId, Location> locations) throws IOException {
+    List<ObjectId> ids = new ArrayList<ObjectId>(locations.keySet());
+    Collections.sort(ids);
+
+    File indexFile = new File(dir, INDEX_FILE_NAME);
+    File tempFile = new File(dir, INDEX_FILE_NAME + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        tempFile)));
+    try {
+      out.write(INDEX_MAGIC);
+      out.write(format);
+      out.writeInt(numSegments);
+      out.writeLong(lastSegmentLength);
+      out.writeInt(ids.size());
+      byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+      for (ObjectId id : ids) {
+        Location location = locations.get(id);
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+        out.writeInt(location.getSegment());
+        out.writeLong(location.getOffset());
+        out.writeInt(location.getLength());
+      }
+    } finally {
+      out.close();
+    }
+
+    if (indexFile.exists() && !indexFile.delete()) {
+      throw new IOException("can not replace " + indexFile);
+    }
+    if (!tempFile.renameTo(indexFile)) {
+      throw new IOException("can not rename " + tempFile);
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A long-running process which parses many source files given through a framed protocol.
+ *
+ * A request is a header line "id length" followed by length bytes of source code. The id is any
+ * token without spaces chosen by the client. A response is a header line "id ok length" followed
+ * by length bytes of the syntax tree in the text format, or "id error length" followed by an
+ * error message. Requests are parsed concurrently, so a client can send requests without waiting
+ * for responses, and responses are written in the order they are completed. Source code is decoded
+ * by the BlobDecoder of the GitTreeCreator, like blobs of other modes. A request which fails, even
+ * by an Error such as StackOverflowError of a deeply nested expression, gets an error response.
+ *
+ * Every worker thread parses a small compilation unit before the first request is read, so the
+ * first requests do not wait for JDT to be loaded and initialized.
+ */
+public class ParseDaemon {
+  /**
+   * number of pending requests per worker thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+  private GitTreeCreator creator;
+
+  private DataInputStream in;
+
+  private OutputStream out;
+
+  private int numThreads;
+
+  /**
+   * Create a ParseDaemon.
+   *
+   * @param creator
+   *          GitTreeCreator which parses source code
+   * @param in
+   *          stream of requests
+   * @param out
+   *          stream of responses
+   * @param numThreads
+   *          number of worker threads
+   */
+  public ParseDaemon(GitTreeCreator creator, InputStream in, OutputStream out, int numThreads) {
+    this.creator = creator;
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    this.out = new BufferedOutputStream(out);
+    this.numThreads = Math.max(numThreads, 1);
+  }
+
+  /**
+   * Serve requests until the input is closed.
+   *
+   * @throws IOException
+   *           if a request is malformed or a response can not be written
+   */
+  public void serve() throws IOException {
+    ExecutorService executor = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(numThreads * QUEUE_SIZE_PER_THREAD),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      // the executor starts a new thread for each of the first numThreads tasks.
+      for (int i = 0; i < numThreads; i++) {
+        executor.execute(new WarmUpTask());
+      }
+
+      String header;
+      while ((header = readHeader()) != null) {
+        String[] fields = header.split(" ");
+        if (fields.length != 2) {
+          throw new IOException("malformed request header: " + header);
+        }
+        byte[] src = new byte[parseLength(fields[1])];
+        in.readFully(src);
+        executor.execute(new ParseTask(fields[0], src));
+      }
+    } finally {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+
+  /**
+   * Read a header line.
+   *
+   * @return the header without a line separator, or null at the end of the input
+   */
+  private String readHeader() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        if (builder.length() == 0) {
+          return null;
+        }
+        throw new EOFException("unterminated request header: " + builder);
+      }
+      builder.append((char) c);
+    }
+    return builder.toString();
+  }
+
+  private int parseLength(String length) throws IOException {
+    try {
+      int result = Integer.parseInt(length);
+      if (result >= 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // reported below.
+    }
+    throw new IOException("malformed request length: " + length);
+  }
+
+  private void respond(String id, String status, byte[] body) throws IOException {
+    byte[] header = (id + " " + status + " " + body.length + "\n").getBytes(Charsets.US_ASCII);
+    synchronized (out) {
+      out.write(header);
+      out.write(body);
+      out.flush();
+    }
+  }
+
+  /**
+   * A task which warms up the parser of a worker thread.
+   */
+  private class WarmUpTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        creator.warmUp();
+      } catch (Throwable e) {
+        // the request which meets the same failure gets an error response.
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * A task which parses a request and writes its response.
+   */
+  private class ParseTask implements Runnable {
+    private String id;
+
+    private byte[] src;
+
+    public ParseTask(String id, byte[] src) {
+      this.id = id;
+      this.src = src;
+    }
+
+    @Override
+    public void run() {
+      Metrics metrics = creator.getMetrics();
+      String status;
+      byte[] body;
+      try {
+        metrics.addSource(src.length);
+        BlobDecoder decoder = creator.getDecoder();
+        decoder.decode(src, 0, src.length);
+        Tree tree = creator.parseSourcecode(decoder.toArray()).getTree();
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(buffer, Charsets.US_ASCII);
+        new TextFormatTreeWriter(writer).writeTree(tree);
+        metrics.record(Metrics.Stage.WRITE, start);
+        metrics.addBytesOut(buffer.size());
+        status = "ok";
+        body = buffer.toByteArray();
+      } catch (Throwable e) {
+        // the client waits for a response of every request, and other requests are served.
+        metrics.addFailure();
+        status = "error";
+        body = String.valueOf(e).getBytes(Charsets.US_ASCII);
+      }
+
+      try {
+        respond(id, status, body);
+      } catch (IOException e) {
+        // the client can not read responses any more, but other requests are counted as usual.
+        metrics.addFailure();
+        e.printStackTrace();
+      }
+    }
+  }
+}
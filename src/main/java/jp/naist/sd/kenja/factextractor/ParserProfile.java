@@ -0,0 +1,89 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * A named set of settings of ASTParser.
+ *
+ * Every setting which affects syntax trees is given explicitly, so all workers parse with the
+ * same settings. Bindings are never resolved because blobs are parsed without a classpath.
+ */
+public class ParserProfile {
+
+  /**
+   * name of the profile which parses as earlier versions did.
+   */
+  public static final String DEFAULT_NAME = "default";
+
+  /**
+   * name of the profile which parses Java 7 source code.
+   */
+  public static final String JAVA7_NAME = "java7";
+
+  private final String name;
+
+  private final Map<String, String> options;
+
+  private final boolean statementsRecovery;
+
+  private ParserProfile(String name, Map<String, String> options, boolean statementsRecovery) {
+    this.name = name;
+    this.options = Collections.unmodifiableMap(options);
+    this.statementsRecovery = statementsRecovery;
+  }
+
+  /**
+   * Return the profile of a name.
+   *
+   * default parses source level 1.3 with doc comment support and without statements recovery,
+   * which are the defaults of JavaCore that earlier versions used, so syntax trees stay the same
+   * even if the defaults of JavaCore change. java7 parses source level 1.7 with statements recovery
+   * and without doc comment support.
+   *
+   * @param name
+   *          default or java7
+   * @return profile of the name
+   */
+  public static ParserProfile forName(String name) {
+    if (name.equals(DEFAULT_NAME)) {
+      Map<String, String> options = defaultOptions();
+      options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_3);
+      options.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_1_4);
+      options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_2);
+      options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
+      return new ParserProfile(name, options, false);
+    } else if (name.equals(JAVA7_NAME)) {
+      Map<String, String> options = defaultOptions();
+      JavaCore.setComplianceOptions(JavaCore.VERSION_1_7, options);
+      options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.DISABLED);
+      return new ParserProfile(name, options, true);
+    }
+    throw new IllegalArgumentException("unknown parser profile: " + name);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> defaultOptions() {
+    return new HashMap<String, String>(JavaCore.getOptions());
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Return compiler options of the profile.
+   *
+   * @return unmodifiable map of compiler options
+   */
+  public Map<String, String> getOptions() {
+    return options;
+  }
+
+  public boolean isStatementsRecovery() {
+    return statementsRecovery;
+  }
+}
@@ -0,0 +1,48 @@
+package jp.naist.sd.kenja.factextractor;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * A reusable ASTParser which parses compilation units with a ParserProfile.
+ *
+ * ASTParser resets its settings after each parse, so they are applied again before each parse
+ * from the options of the profile, which are created only once. A SourceParser must not be shared
+ * by threads.
+ */
+public class SourceParser {
+  private final ASTParser parser = ASTParser.newParser(AST.JLS4);
+
+  private final NullProgressMonitor monitor = new NullProgressMonitor();
+
+  private final ParserProfile profile;
+
+  public SourceParser(ParserProfile profile) {
+    this.profile = profile;
+  }
+
+  /**
+   * Parse source code of a compilation unit.
+   *
+   * @param src
+   *          source code
+   * @param ignoreMethodBodies
+   *          true if statements of method bodies are not needed
+   * @return compilation unit
+   */
+  public CompilationUnit parse(char[] src, boolean ignoreMethodBodies) {
+    parser.setKind(ASTParser.K_COMPILATION_UNIT);
+    parser.setCompilerOptions(profile.getOptions());
+    parser.setResolveBindings(false);
+    parser.setStatementsRecovery(profile.isStatementsRecovery());
+    parser.setIgnoreMethodBodies(ignoreMethodBodies);
+    parser.setSource(src);
+    return (CompilationUnit) parser.createAST(monitor);
+  }
+
+  public ParserProfile getProfile() {
+    return profile;
+  }
+}
@@ -0,0 +1,101 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A view of a range of source code, which is optionally terminated by a line separator.
+ *
+ * The source buffer is referenced instead of copied, so it must not be modified while the slice
+ * is used.
+ */
+public class SourceSlice implements CharSequence {
+  private final char[] source;
+
+  private final int offset;
+
+  private final int length;
+
+  /**
+   * true if '\n' follows the range.
+   */
+  private final boolean terminated;
+
+  /**
+   * Create a SourceSlice.
+   *
+   * @param source
+   *          source buffer
+   * @param offset
+   *          start of the range
+   * @param length
+   *          length of the range
+   * @param terminated
+   *          true if '\n' is appended to the range
+   */
+  public SourceSlice(char[] source, int offset, int length, boolean terminated) {
+    if (offset < 0 || length < 0 || offset + length > source.length) {
+      throw new IndexOutOfBoundsException("slice " + offset + "+" + length + " of "
+          + source.length);
+    }
+    this.source = source;
+    this.offset = offset;
+    this.length = length;
+    this.terminated = terminated;
+  }
+
+  @Override
+  public int length() {
+    return terminated ? length + 1 : length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+    }
+    if (index == length) {
+      return '\n';
+    }
+    return source[offset + index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length() || start > end) {
+      throw new IndexOutOfBoundsException(start + "-" + end);
+    }
+    if (end <= length) {
+      return new SourceSlice(source, offset + start, end - start, false);
+    } else if (start > length) {
+      // an empty range after the line separator.
+      return new SourceSlice(source, offset + length, 0, false);
+    }
+    return new SourceSlice(source, offset + start, length - start, true);
+  }
+
+  /**
+   * Write the slice without copying it.
+   *
+   * @param out
+   *          writer
+   * @throws IOException
+   *           if out can not be written
+   */
+  public void writeTo(Writer out) throws IOException {
+    out.write(source, offset, length);
+    if (terminated) {
+      out.write('\n');
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(length());
+    builder.append(source, offset, length);
+    if (terminated) {
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+}
@@ -1,56 +1,78 @@
 package jp.naist.sd.kenja.factextractor;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A finder of source code files in a directory tree.
+ *
+ * Each directory is listed once, and source code files are passed to a Visitor as soon as they are
+ * found, so the caller can start processing them before the walk is finished.
+ */
 public class SourcecodeFinder {
-  private List<String> extensions;
+  /**
+   * A visitor of source code files found by a walk.
+   */
+  public interface Visitor {
+    /**
+     * Called for each source code file.
+     *
+     * @param file
+     *          source code file
+     */
+    public void sourcecode(File file);
+  }
 
   private List<File> files = new ArrayList<File>();
 
-  private String basePath;
-
-  private FilenameFilter extensionFilter;
-
-  private FileFilter directoryFilter = new FileFilter() {
-    public boolean accept(File file) {
-      if (file.isDirectory()) {
-        return true;
-      }
-      return false;
-    }
-  };
-
   public List<File> getFiles() {
     return files;
   }
 
   public SourcecodeFinder(String basePath, List<String> extensions) {
-    this.extensions = extensions;
-    this.basePath = basePath;
-
-    this.extensionFilter = new ExtensionsFilter(this.extensions);
-
-    this.findSourcecode();
+    walk(new File(basePath), extensions, new Visitor() {
+      @Override
+      public void sourcecode(File file) {
+        files.add(file);
+      }
+    });
   }
 
-  private void findSourcecode() {
-    File base = new File(basePath);
+  /**
+   * Walk a directory tree in depth first order.
+   *
+   * @param base
+   *          root of the directory tree. Nothing is visited if it is not a directory.
+   * @param extensions
+   *          extensions of source code files
+   * @param visitor
+   *          visitor of found files
+   */
+  public static void walk(File base, List<String> extensions, Visitor visitor) {
     if (!base.isDirectory()) {
       return;
     }
-    findSourcecode(base);
+    walk(base, new ExtensionsFilter(extensions), visitor);
   }
 
-  private void findSourcecode(File dir) {
-    for (File nextDir : dir.listFiles(directoryFilter)) {
-      findSourcecode(nextDir);
+  private static void walk(File dir, FilenameFilter extensionFilter, Visitor visitor) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+
+    List<File> subdirs = new ArrayList<File>();
+    for (File child : children) {
+      if (child.isDirectory()) {
+        subdirs.add(child);
+      } else if (extensionFilter.accept(dir, child.getName())) {
+        visitor.sourcecode(child);
+      }
     }
-    for (File file : dir.listFiles(extensionFilter)) {
-      files.add(file);
+    for (File subdir : subdirs) {
+      walk(subdir, extensionFilter, visitor);
     }
   }
 }
@@ -0,0 +1,24 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination of syntax trees which are extracted from git blobs.
+ *
+ * Implementations must allow write to be called from several threads at once.
+ */
+public interface SyntaxTreeOutput extends Closeable {
+  /**
+   * Write the syntax tree of a blob.
+   *
+   * @param name
+   *          name of the syntax tree, which is the id of the blob
+   * @param tree
+   *          root Tree of the syntax tree
+   * @return number of written bytes
+   * @throws IOException
+   *           if the syntax tree can not be written
+   */
+  public long write(String name, Tree tree) throws IOException;
+}
@@ -0,0 +1,47 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A SyntaxTreeOutput which writes each syntax tree to a file in a directory by
+ * TextFormatTreeWriter. A file which already exists is replaced, because TextFormatTreeWriter
+ * appends to it.
+ */
+public class TextFileOutput implements SyntaxTreeOutput {
+  private File syntaxTreeDir;
+
+  private FanoutLayout layout;
+
+  public TextFileOutput(File syntaxTreeDir) {
+    this(syntaxTreeDir, new FanoutLayout(0));
+  }
+
+  /**
+   * Create a TextFileOutput which places files in a fan-out layout.
+   *
+   * @param syntaxTreeDir
+   *          syntax trees directory
+   * @param layout
+   *          layout of files in the directory
+   */
+  public TextFileOutput(File syntaxTreeDir, FanoutLayout layout) {
+    this.syntaxTreeDir = syntaxTreeDir;
+    this.layout = layout;
+  }
+
+  @Override
+  public long write(String name, Tree tree) throws IOException {
+    File file = layout.getFile(syntaxTreeDir, name);
+    if (file.exists() && !file.delete()) {
+      throw new IOException("failed to delete " + file);
+    }
+    TextFormatTreeWriter writer = new TextFormatTreeWriter(file);
+    writer.writeTree(tree);
+    return writer.getBytesWritten();
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -1,29 +1,51 @@
 package jp.naist.sd.kenja.factextractor;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-
-import org.apache.commons.lang3.tuple.Pair;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.CountingOutputStream;
 import com.google.common.io.Files;
 
 public class TextFormatTreeWriter implements TreeWriter {
   private File outputFile;
 
+  /**
+   * Writer given by the caller. null if trees are written to outputFile.
+   */
+  private Writer target;
+
+  /**
+   * Writer which is opened while a tree is written.
+   */
+  private Writer out;
+
+  /**
+   * stream which counts bytes written to outputFile while a tree is written.
+   */
+  private CountingOutputStream counter;
+
+  /**
+   * number of bytes written to outputFile, or chars written to target.
+   */
+  private long bytesWritten;
+
   private static final String BLOB = "[BN] ";
-  private static final String TREE = "[TN] ";
 
   private static final String BLOB_LINEINFO = "[BI] ";
 
   private static final String START_TREE = "[TS] ";
   private static final String END_TREE = "[TE] ";
 
+  /**
+   * size of the output buffer. most syntax trees fit in it and are written by a single call.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   public TextFormatTreeWriter(File outputFile) throws IOException {
     this.outputFile = outputFile.getAbsoluteFile();
     if (!this.outputFile.getParentFile().exists()) {
@@ -31,83 +53,120 @@ public class TextFormatTreeWriter implements TreeWriter {
     }
   }
 
+  /**
+   * Create a TextFormatTreeWriter which writes trees to a Writer. The writer is flushed after each
+   * tree but not closed.
+   *
+   * @param target
+   *          writer where trees are written
+   */
+  public TextFormatTreeWriter(Writer target) {
+    this.target = target;
+  }
+
+  /**
+   * Write a tree to the output file or the target writer. The file is opened once per call and all
+   * lines are buffered until the whole tree is written. Trees are appended to the file.
+   */
   public void writeTree(Tree tree) throws IOException {
-    if (tree.isRoot()) {
-      Files.touch(outputFile);
-    } else {
-      String line = START_TREE + tree.getName() + "\n";
-      Files.append(line, outputFile, Charsets.US_ASCII);
+    if (out != null) {
+      writeTreeContents(tree);
+      return;
     }
 
-    HashMap<String, Tree> treeMap = createTreeMap(tree);
-    HashMap<String, Blob> blobMap = createBlobMap(tree);
-
-    for (Pair<String, String> content : createTreeContents(tree)) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(content.getLeft());
-      builder.append(content.getRight());
-      builder.append("\n");
-      if (content.getLeft() == BLOB) {
-        Files.append(builder.toString(), outputFile, Charsets.US_ASCII);
-        writeBlob(blobMap.get(content.getRight()));
-      } else if (content.getLeft() == TREE) {
-        writeTree(treeMap.get(content.getRight()));
-      }
-
-    }
-    if (!tree.isRoot()) {
-      String line = END_TREE + tree.getName() + "\n";
-      Files.append(line, outputFile, Charsets.US_ASCII);
+    out = open();
+    try {
+      writeTreeContents(tree);
+      out.flush();
+    } finally {
+      release();
     }
   }
 
-  private HashMap<String, Tree> createTreeMap(Tree tree) {
-    HashMap<String, Tree> result = new HashMap<String, Tree>();
-    for (Tree childTree : tree.getChildTrees()) {
-      result.put(childTree.getName(), childTree);
+  private Writer open() throws IOException {
+    if (target != null) {
+      return target;
     }
-    return result;
+    counter = new CountingOutputStream(new FileOutputStream(outputFile, true));
+    return new BufferedWriter(new OutputStreamWriter(counter, Charsets.US_ASCII), BUFFER_SIZE);
   }
 
-  private HashMap<String, Blob> createBlobMap(Tree tree) {
-    HashMap<String, Blob> result = new HashMap<String, Blob>();
-    for (Blob blob : tree.getBlobs()) {
-      result.put(blob.getName(), blob);
+  private void release() throws IOException {
+    try {
+      if (target == null) {
+        out.close();
+      }
+    } finally {
+      if (counter != null) {
+        bytesWritten += counter.getCount();
+        counter = null;
+      }
+      out = null;
     }
-    return result;
   }
 
-  public void writeBlob(Blob blob) throws IOException {
-    int lines = 0;
-    if (blob.getBody() != "") {
-      lines = blob.getBody().split("\n").length;
+  private void writeTreeContents(Tree tree) throws IOException {
+    if (!tree.isRoot()) {
+      write(START_TREE);
+      write(tree.getName());
+      write("\n");
     }
-    Files.append(BLOB_LINEINFO + lines + "\n", outputFile, Charsets.US_ASCII);
-    if (lines != 0) {
-      Files.append(blob.getBody(), outputFile, Charsets.US_ASCII);
+
+    for (TreeEntry entry : tree.getSortedEntries()) {
+      if (entry instanceof Blob) {
+        write(BLOB);
+        write(entry.getName());
+        write("\n");
+        writeBlob((Blob) entry);
+      } else {
+        writeTreeContents((Tree) entry);
+      }
+    }
+    if (!tree.isRoot()) {
+      write(END_TREE);
+      write(tree.getName());
+      write("\n");
     }
   }
 
-  private List<Pair<String, String>> createTreeContents(Tree tree) {
-    List<Pair<String, String>> contents = new ArrayList<Pair<String, String>>();
-
-    for (Blob blbo : tree.getBlobs()) {
-      contents.add(Pair.of(BLOB, blbo.getName()));
+  public void writeBlob(Blob blob) throws IOException {
+    if (out == null) {
+      out = open();
+      try {
+        writeBlob(blob);
+        out.flush();
+      } finally {
+        release();
+      }
+      return;
     }
 
-    for (Tree childTree : tree.getChildTrees()) {
-      contents.add(Pair.of(TREE, childTree.getName()));
+    int lines = blob.getLineCount();
+    write(BLOB_LINEINFO);
+    write(Integer.toString(lines));
+    write("\n");
+    if (lines != 0) {
+      blob.writeTo(out);
+      if (target != null) {
+        bytesWritten += blob.getContent().length();
+      }
     }
+  }
 
-    Comparator<Pair<String, String>> comparator = new Comparator<Pair<String, String>>() {
-
-      @Override
-      public int compare(Pair<String, String> o1, Pair<String, String> o2) {
-        return o1.getRight().compareTo(o2.getRight());
-      }
-    };
+  private void write(String str) throws IOException {
+    out.write(str);
+    if (target != null) {
+      bytesWritten += str.length();
+    }
+  }
 
-    Collections.sort(contents, comparator);
-    return contents;
+  /**
+   * Return the number of bytes written to the output file. Trees written to a target writer are
+   * encoded by its owner, so the number of chars written to it is returned instead.
+   *
+   * @return number of written bytes
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
   }
 }
@@ -1,21 +1,68 @@
 package jp.naist.sd.kenja.factextractor;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 
-public class Tree {
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+public class Tree implements TreeEntry {
 
   private static final String ROOT_NAME = "";
 
+  /**
+   * order of entries by name. Blobs come before trees of the same name.
+   */
+  private static final Comparator<TreeEntry> NAME_ORDER = new Comparator<TreeEntry>() {
+    @Override
+    public int compare(TreeEntry o1, TreeEntry o2) {
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+
   private List<Blob> blobs = new ArrayList<Blob>();
   private List<Tree> trees = new ArrayList<Tree>();
 
+  /**
+   * index of blobs by name. A name may be shared while conflicting entries are being renamed.
+   */
+  private ListMultimap<String, Blob> blobIndex = ArrayListMultimap.create();
+
+  /**
+   * index of trees by name.
+   */
+  private ListMultimap<String, Tree> treeIndex = ArrayListMultimap.create();
+
+  /**
+   * blobs and trees sorted by name. null if it has to be sorted again.
+   */
+  private List<TreeEntry> sortedEntries;
+
   private String name;
 
+  /**
+   * Tree which contains this tree. It is notified when the tree is renamed.
+   */
+  private Tree parent;
+
+  /**
+   * git id of this tree. null if it is not computed yet or an entry has changed since.
+   */
+  private ObjectId id;
+
+  /**
+   * true if id is computed from exact ids of all blobs in this tree and its subtrees.
+   */
+  private boolean idExact;
+
   public boolean isRoot() {
     return name.equals(ROOT_NAME);
   }
@@ -29,21 +76,121 @@ public class Tree {
   }
 
   public void setName(String name) {
+    String oldName = this.name;
     this.name = name;
+    if (parent != null) {
+      parent.renamed(this, oldName);
+    }
   }
 
   public void append(Blob blob) {
     blobs.add(blob);
+    blobIndex.put(blob.getName(), blob);
+    blob.setParent(this);
+    sortedEntries = null;
+    invalidateId();
   }
 
   public void append(Tree tree) {
     trees.add(tree);
+    treeIndex.put(tree.getName(), tree);
+    tree.parent = this;
+    sortedEntries = null;
+    invalidateId();
   }
 
   public void addAll(Iterable<Blob> blobs) {
     for (Blob blob : blobs) {
-      this.blobs.add(blob);
+      append(blob);
+    }
+  }
+
+  /**
+   * Update the index after a child blob is renamed.
+   */
+  void renamed(Blob blob, String oldName) {
+    blobIndex.remove(oldName, blob);
+    blobIndex.put(blob.getName(), blob);
+    sortedEntries = null;
+    invalidateId();
+  }
+
+  /**
+   * Update the index after a child tree is renamed.
+   */
+  private void renamed(Tree tree, String oldName) {
+    treeIndex.remove(oldName, tree);
+    treeIndex.put(tree.getName(), tree);
+    sortedEntries = null;
+    invalidateId();
+  }
+
+  /**
+   * Forget the ids of this tree and the trees which contain it after an entry is changed. If the
+   * id of a tree is not computed, the ids of trees which contain it are not computed either.
+   */
+  void invalidateId() {
+    for (Tree tree = this; tree != null && tree.id != null; tree = tree.parent) {
+      tree.id = null;
+    }
+  }
+
+  /**
+   * Return the id of the git tree object of this tree, as GitObjectTreeWriter stores it. Ids of
+   * entries are computed bottom-up and kept until an entry is changed, so ids of unchanged
+   * subtrees are reused.
+   *
+   * @return id of the tree
+   */
+  public ObjectId getId() {
+    if (id == null) {
+      id = GitTreeEntry.idForTree(getGitEntries());
+      idExact = true;
+      for (Blob blob : blobs) {
+        idExact &= blob.hasExactId();
+      }
+      for (Tree tree : trees) {
+        idExact &= tree.hasExactId();
+      }
     }
+    return id;
+  }
+
+  /**
+   * Return true if the id is computed and all bodies of blobs in this tree and its subtrees are
+   * identified exactly by their ids. Equal exact ids mean equal entries except empty trees.
+   *
+   * @return true if the id is computed and exact
+   */
+  public boolean hasExactId() {
+    return id != null && idExact;
+  }
+
+  /**
+   * Return the id if it is already computed.
+   *
+   * @return id of the tree, or null if it is not computed or an entry has changed since
+   */
+  public ObjectId getCachedId() {
+    return id;
+  }
+
+  /**
+   * Return entries of the git tree object of this tree. Empty child trees are omitted because git
+   * does not track empty directories.
+   */
+  List<GitTreeEntry> getGitEntries() {
+    List<GitTreeEntry> entries = new ArrayList<GitTreeEntry>(blobs.size() + trees.size());
+    for (Blob blob : blobs) {
+      entries.add(new GitTreeEntry(blob.getName(), FileMode.REGULAR_FILE, blob.getId()));
+    }
+    for (Tree tree : trees) {
+      ObjectId childId = tree.getId();
+      if (!childId.equals(GitTreeEntry.EMPTY_TREE_ID)) {
+        entries.add(new GitTreeEntry(tree.getName(), FileMode.TREE, childId));
+      }
+    }
+    return entries;
   }
 
   public Iterable<Blob> getBlobs() {
@@ -54,6 +201,24 @@ public class Tree {
     return trees;
   }
 
+  /**
+   * Return blobs and trees sorted by name. Blobs come before trees of the same name, and entries
+   * of the same kind and name keep the order they were appended. The sorted list is cached until
+   * an entry is appended or renamed.
+   *
+   * @return unmodifiable list of entries
+   */
+  public List<TreeEntry> getSortedEntries() {
+    if (sortedEntries == null) {
+      List<TreeEntry> entries = new ArrayList<TreeEntry>(blobs.size() + trees.size());
+      entries.addAll(blobs);
+      entries.addAll(trees);
+      Collections.sort(entries, NAME_ORDER);
+      sortedEntries = Collections.unmodifiableList(entries);
+    }
+    return sortedEntries;
+  }
+
   public boolean has(String name) {
     if (hasTree(name)) {
       return true;
@@ -63,32 +228,34 @@ public class Tree {
   }
 
   public Tree getChild(String name) {
-    for (Tree tree : trees) {
-      if (tree.getName().equals(name)) {
-        return tree;
-      }
+    List<Tree> found = treeIndex.get(name);
+    if (found.isEmpty()) {
+      return null;
     }
-
-    return null;
+    return found.get(0);
   }
 
-  public boolean hasBlob(String name) {
-    for (Blob blob : blobs) {
-      if (blob.getName().equals(name)) {
-        return true;
-      }
+  /**
+   * Return a blob of the name.
+   *
+   * @param name
+   *          name of the blob
+   * @return the first appended blob of the name, or null if there is no such blob
+   */
+  public Blob getBlob(String name) {
+    List<Blob> found = blobIndex.get(name);
+    if (found.isEmpty()) {
+      return null;
     }
+    return found.get(0);
+  }
 
-    return false;
+  public boolean hasBlob(String name) {
+    return blobIndex.containsKey(name);
   }
 
   public boolean hasTree(String name) {
-    for (Tree tree : trees) {
-      if (tree.getName().equals(name)) {
-        return true;
-      }
-    }
-    return false;
+    return treeIndex.containsKey(name);
   }
 
   public List<String> getObjectsPath(String prefix) {
@@ -0,0 +1,169 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Differences between two versions of a syntax tree.
+ *
+ * Entries are matched by name and kind, so a blob and a tree of the same name are different
+ * entries. A blob of both versions is modified if its body is changed, and a tree of both versions
+ * is compared recursively and never reported itself. A tree which is only in one version is
+ * reported as a whole without its entries. Changes are listed in the order of paths. Trees whose
+ * exact ids are already computed and equal are skipped without comparing their entries, so changes
+ * of empty trees in them, which git ids do not reflect, are not reported. Ids of trees with
+ * non-ASCII characters in blobs are not exact and never skip a comparison.
+ */
+public class TreeDiff {
+  /**
+   * Kind of a change.
+   */
+  public enum Type {
+    ADDED, REMOVED, MODIFIED
+  }
+
+  /**
+   * A change of an entry.
+   */
+  public static class Change {
+    private final Type type;
+
+    private final String path;
+
+    private final TreeEntry oldEntry;
+
+    private final TreeEntry newEntry;
+
+    public Change(Type type, String path, TreeEntry oldEntry, TreeEntry newEntry) {
+      this.type = type;
+      this.path = path;
+      this.oldEntry = oldEntry;
+      this.newEntry = newEntry;
+    }
+
+    public Type getType() {
+      return type;
+    }
+
+    /**
+     * Return the path of the entry from the root trees.
+     *
+     * @return names of trees and the entry separated by '/'
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Return the entry of the old version.
+     *
+     * @return Blob or Tree, or null if the entry is added
+     */
+    public TreeEntry getOldEntry() {
+      return oldEntry;
+    }
+
+    /**
+     * Return the entry of the new version.
+     *
+     * @return Blob or Tree, or null if the entry is removed
+     */
+    public TreeEntry getNewEntry() {
+      return newEntry;
+    }
+
+    public boolean isTree() {
+      return (newEntry != null ? newEntry : oldEntry) instanceof Tree;
+    }
+
+    @Override
+    public String toString() {
+      return type + " " + path;
+    }
+  }
+
+  private TreeDiff() {
+  }
+
+  /**
+   * Compare two versions of a syntax tree. Names of the root trees are not compared.
+   *
+   * @param oldTree
+   *          old version, or null if all entries are added
+   * @param newTree
+   *          new version, or null if all entries are removed
+   * @return changes in the order of paths
+   */
+  public static List<Change> compare(Tree oldTree, Tree newTree) {
+    List<Change> changes = new ArrayList<Change>();
+    compare(oldTree, newTree, "", changes);
+    return changes;
+  }
+
+  private static void compare(Tree oldTree, Tree newTree, String prefix, List<Change> changes) {
+    List<TreeEntry> oldEntries = getEntries(oldTree);
+    List<TreeEntry> newEntries = getEntries(newTree);
+    int oldIndex = 0;
+    int newIndex = 0;
+    while (oldIndex < oldEntries.size() || newIndex < newEntries.size()) {
+      TreeEntry oldEntry = oldIndex < oldEntries.size() ? oldEntries.get(oldIndex) : null;
+      TreeEntry newEntry = newIndex < newEntries.size() ? newEntries.get(newIndex) : null;
+      int cmp;
+      if (oldEntry == null) {
+        cmp = 1;
+      } else if (newEntry == null) {
+        cmp = -1;
+      } else {
+        cmp = compareEntries(oldEntry, newEntry);
+      }
+
+      if (cmp < 0) {
+        changes.add(new Change(Type.REMOVED, prefix + oldEntry.getName(), oldEntry, null));
+        oldIndex++;
+      } else if (cmp > 0) {
+        changes.add(new Change(Type.ADDED, prefix + newEntry.getName(), null, newEntry));
+        newIndex++;
+      } else {
+        String path = prefix + newEntry.getName();
+        if (newEntry instanceof Tree) {
+          if (!hasSameId((Tree) oldEntry, (Tree) newEntry)) {
+            compare((Tree) oldEntry, (Tree) newEntry, path + "/", changes);
+          }
+        } else if (!((Blob) oldEntry).contentEquals((Blob) newEntry)) {
+          changes.add(new Change(Type.MODIFIED, path, oldEntry, newEntry));
+        }
+        oldIndex++;
+        newIndex++;
+      }
+    }
+  }
+
+  private static boolean hasSameId(Tree oldTree, Tree newTree) {
+    return oldTree.hasExactId() && newTree.hasExactId()
+        && oldTree.getCachedId().equals(newTree.getCachedId());
+  }
+
+  private static List<TreeEntry> getEntries(Tree tree) {
+    if (tree == null) {
+      return Collections.emptyList();
+    }
+    return tree.getSortedEntries();
+  }
+
+  /**
+   * Compare entries in the order of Tree.getSortedEntries.
+   */
+  private static int compareEntries(TreeEntry entry1, TreeEntry entry2) {
+    int cmp = entry1.getName().compareTo(entry2.getName());
+    if (cmp != 0) {
+      return cmp;
+    }
+    boolean isTree1 = entry1 instanceof Tree;
+    boolean isTree2 = entry2 instanceof Tree;
+    if (isTree1 == isTree2) {
+      return 0;
+    }
+    return isTree1 ? 1 : -1;
+  }
+}
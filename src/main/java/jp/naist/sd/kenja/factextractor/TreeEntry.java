@@ -0,0 +1,8 @@
+package jp.naist.sd.kenja.factextractor;
+
+/**
+ * An entry of a Tree, which is either a Blob or a Tree.
+ */
+public interface TreeEntry {
+  public String getName();
+}
@@ -0,0 +1,154 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Extract syntax trees of source code files in a working tree.
+ *
+ * Files are parsed and written by a thread pool while SourcecodeFinder is still walking the
+ * working tree, so the first syntax trees are written soon after the extraction starts. The
+ * syntax tree of a file is named by its path relative to the working tree, so the output mirrors
+ * the layout of the source code.
+ */
+public class WorkingTreeExtractor {
+  /**
+   * extensions of source code files.
+   */
+  public static final List<String> EXTENSIONS = Arrays.asList(".java");
+
+  /**
+   * number of pending files per worker thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+
+  private GitTreeCreator creator;
+
+  private File workingTree;
+
+  private SyntaxTreeOutput output;
+
+  private int numThreads;
+
+  /**
+   * Create a WorkingTreeExtractor.
+   *
+   * @param creator
+   *          GitTreeCreator which parses source code
+   * @param workingTree
+   *          root directory of the working tree
+   * @param output
+   *          destination of syntax trees
+   * @param numThreads
+   *          number of worker threads. files are processed on the calling thread if 1
+   */
+  public WorkingTreeExtractor(GitTreeCreator creator, File workingTree, SyntaxTreeOutput output,
+      int numThreads) {
+    this.creator = creator;
+    this.workingTree = workingTree.getAbsoluteFile();
+    this.output = output;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Extract syntax trees of all source code files in the working tree.
+   */
+  public void extract() {
+    if (numThreads <= 1) {
+      SourcecodeFinder.walk(workingTree, EXTENSIONS, new SourcecodeFinder.Visitor() {
+        @Override
+        public void sourcecode(File file) {
+          extract(file);
+        }
+      });
+      return;
+    }
+
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(numThreads
+            * QUEUE_SIZE_PER_THREAD), new BlockingPolicy());
+    try {
+      SourcecodeFinder.walk(workingTree, EXTENSIONS, new SourcecodeFinder.Visitor() {
+        @Override
+        public void sourcecode(final File file) {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              extract(file);
+            }
+          });
+        }
+      });
+    } finally {
+      executor.shutdown();
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          continue;
+        }
+      } catch (InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Extract the syntax tree of a source code file in the working tree.
+   *
+   * @param file
+   *          source code file
+   * @return true if the syntax tree is written, or false if the file failed to be read, parsed or
+   *         written
+   */
+  public boolean extract(File file) {
+    Metrics metrics = creator.getMetrics();
+    try {
+      long start = System.nanoTime();
+      byte[] bytes = FileUtils.readFileToByteArray(file);
+      BlobDecoder decoder = creator.getDecoder();
+      decoder.decode(bytes, 0, bytes.length);
+      metrics.record(Metrics.Stage.LOAD, start);
+      metrics.addSource(bytes.length);
+
+      Tree tree = creator.parseSourcecode(decoder.toArray()).getTree();
+
+      start = System.nanoTime();
+      metrics.addBytesOut(output.write(getName(file), tree));
+      metrics.record(Metrics.Stage.WRITE, start);
+      return true;
+    } catch (IOException e) {
+      metrics.addFailure();
+      e.printStackTrace();
+      return false;
+    } catch (RuntimeException e) {
+      // a file which the parser can not handle does not stop the extraction of other files.
+      metrics.addFailure();
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Return the name of the syntax tree of a file, which is its path relative to the working tree
+   * separated by '/'.
+   *
+   * @param file
+   *          file in the working tree
+   * @return name of the syntax tree
+   */
+  public String getName(File file) {
+    String root = workingTree.getPath();
+    String path = file.getAbsolutePath();
+    if (!path.startsWith(root + File.separator)) {
+      throw new IllegalArgumentException(file + " is not in " + workingTree);
+    }
+    return path.substring(root.length() + 1).replace(File.separatorChar, '/');
+  }
+}
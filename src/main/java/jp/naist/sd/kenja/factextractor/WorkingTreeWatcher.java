@@ -0,0 +1,223 @@
+package jp.naist.sd.kenja.factextractor;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.monitor.FileAlterationListenerAdaptor;
+import org.apache.commons.io.monitor.FileAlterationObserver;
+
+/**
+ * Keep syntax trees of a working tree up to date while its files change.
+ *
+ * After all files are extracted once, the working tree is polled for created, changed and deleted
+ * source code files. Changes are collected until no file has changed for the debounce time, so a
+ * burst of saves is handled as one batch in which each file is parsed once. Only syntax trees of
+ * the changed files are rewritten, and syntax trees of deleted files are removed. A deleted
+ * directory is reported without its files, so all syntax trees under it are removed. A syntax tree
+ * may be a file or, if it is written by DirectoryOutput, a directory. A line of the status ("M" or
+ * "D") and the name is printed for each updated syntax tree.
+ *
+ * The working tree is polled because the build targets Java 6, which has no
+ * java.nio.file.WatchService. Each poll lists all directories and compares modification times, so
+ * its cost grows with the size of the working tree; a large working tree should be watched with a
+ * longer interval (--poll-interval of the watch mode).
+ */
+public class WorkingTreeWatcher {
+  /**
+   * default interval of polling in milliseconds.
+   */
+  public static final int DEFAULT_POLL_INTERVAL = 200;
+
+  /**
+   * default time in milliseconds without changes before a batch of changes is extracted.
+   */
+  public static final int DEFAULT_DEBOUNCE = 100;
+
+  private WorkingTreeExtractor extractor;
+
+  private File workingTree;
+
+  private File syntaxTreeDir;
+
+  private PrintStream out;
+
+  private long pollInterval;
+
+  private long debounce;
+
+  /**
+   * changed files and true if they exist, in the order of changes.
+   */
+  private Map<File, Boolean> pending = new LinkedHashMap<File, Boolean>();
+
+  /**
+   * deleted directories of the working tree in pending.
+   */
+  private Set<File> deletedDirs = new HashSet<File>();
+
+  /**
+   * time of the last change in nanoseconds.
+   */
+  private long lastChange;
+
+  /**
+   * Create a WorkingTreeWatcher.
+   *
+   * @param extractor
+   *          extractor which writes syntax trees into syntaxTreeDir
+   * @param workingTree
+   *          root directory of the working tree
+   * @param syntaxTreeDir
+   *          syntax trees directory
+   * @param out
+   *          stream where updated syntax trees are reported
+   * @param pollInterval
+   *          interval of polling in milliseconds
+   * @param debounce
+   *          time in milliseconds without changes before a batch of changes is extracted
+   */
+  public WorkingTreeWatcher(WorkingTreeExtractor extractor, File workingTree, File syntaxTreeDir,
+      PrintStream out, long pollInterval, long debounce) {
+    this.extractor = extractor;
+    this.workingTree = workingTree.getAbsoluteFile();
+    this.syntaxTreeDir = syntaxTreeDir;
+    this.out = out;
+    this.pollInterval = pollInterval;
+    this.debounce = debounce;
+  }
+
+  /**
+   * Extract all files and keep watching the working tree until the thread is interrupted.
+   *
+   * @throws Exception
+   *           if the working tree can not be watched
+   */
+  public void watch() throws Exception {
+    FileAlterationObserver observer = new FileAlterationObserver(workingTree, new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        if (file.isDirectory()) {
+          return true;
+        }
+        for (String extension : WorkingTreeExtractor.EXTENSIONS) {
+          if (file.getName().endsWith(extension)) {
+            return true;
+          }
+        }
+        return false;
+      }
+    });
+    observer.addListener(new FileAlterationListenerAdaptor() {
+      @Override
+      public void onFileCreate(File file) {
+        changed(file, true);
+      }
+
+      @Override
+      public void onFileChange(File file) {
+        changed(file, true);
+      }
+
+      @Override
+      public void onFileDelete(File file) {
+        changed(file, false);
+      }
+
+      @Override
+      public void onDirectoryDelete(File dir) {
+        changed(dir, false);
+        deletedDirs.add(dir);
+      }
+    });
+
+    // files saved during the first extraction are reported by the first poll.
+    observer.initialize();
+    extractor.extract();
+    out.flush();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(pollInterval);
+        observer.checkAndNotify();
+        if (!pending.isEmpty() && System.nanoTime() - lastChange >= debounce * 1000000L) {
+          flush();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      observer.destroy();
+    }
+  }
+
+  private void changed(File file, boolean exists) {
+    // remove first so the file moves to the end of the batch.
+    pending.remove(file);
+    deletedDirs.remove(file);
+    pending.put(file, exists);
+    lastChange = System.nanoTime();
+  }
+
+  private void flush() {
+    try {
+      for (Map.Entry<File, Boolean> entry : pending.entrySet()) {
+        File file = entry.getKey().getAbsoluteFile();
+        String name = extractor.getName(file);
+        if (entry.getValue()) {
+          if (extractor.extract(file)) {
+            out.println("M " + name);
+          }
+        } else {
+          File syntaxTree = new File(syntaxTreeDir, name);
+          if (deletedDirs.contains(entry.getKey())) {
+            deleteDirectory(syntaxTree, name);
+          } else {
+            deleteSyntaxTree(syntaxTree, name);
+          }
+        }
+      }
+    } finally {
+      out.flush();
+      pending.clear();
+      deletedDirs.clear();
+    }
+  }
+
+  /**
+   * Delete the syntax tree of a source code file, which is a directory if it is written by
+   * DirectoryOutput.
+   */
+  private void deleteSyntaxTree(File syntaxTree, String name) {
+    if (syntaxTree.isDirectory()) {
+      if (FileUtils.deleteQuietly(syntaxTree)) {
+        out.println("D " + name);
+      }
+    } else if (syntaxTree.delete()) {
+      out.println("D " + name);
+    }
+  }
+
+  /**
+   * Delete all syntax trees in a directory of the syntax trees directory, and the directory.
+   */
+  private void deleteDirectory(File dir, String dirName) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      ExtensionsFilter filter = new ExtensionsFilter(WorkingTreeExtractor.EXTENSIONS);
+      for (File child : children) {
+        String name = dirName + "/" + child.getName();
+        if (filter.accept(dir, child.getName())) {
+          deleteSyntaxTree(child, name);
+        } else if (child.isDirectory()) {
+          deleteDirectory(child, name);
+        }
+      }
+    }
+    FileUtils.deleteQuietly(dir);
+  }
+}
@@ -62,11 +62,23 @@ public class ASTClass extends ASTType {
    *          TypeDeclaration class of Eclipse AST.
    */
   protected ASTClass(TypeDeclaration typeDec) {
+    this(typeDec, new ASTContext());
+  }
+
+  /**
+   * Construct ASTClass from Eclipse AST TypeDeclaration class.
+   * 
+   * @param typeDec
+   *          TypeDeclaration class of Eclipse AST.
+   * @param context
+   *          context of the compilation unit which contains typeDec
+   */
+  protected ASTClass(TypeDeclaration typeDec, ASTContext context) {
     super(typeDec.getName().toString());
 
     if (typeDec.getSuperclassType() != null) {
       superClass = new Blob("extend");
-      superClass.setBody(typeDec.getSuperclassType().toString() + "\n");
+      superClass.setBody(context.linesOf(typeDec.getSuperclassType()));
       root.append(superClass);
     }
 
@@ -75,7 +87,7 @@ public class ASTClass extends ASTType {
 
     Multimap<String, ASTMethod> methodMap = HashMultimap.create();
     for (MethodDeclaration methodDec : typeDec.getMethods()) {
-      ASTMethod method = ASTMethod.fromMethodDeclaralation(methodDec);
+      ASTMethod method = ASTMethod.fromMethodDeclaralation(methodDec, context);
 
       if (method.isConstructor()) {
         constructorRoot.append(method.getTree());
@@ -101,7 +113,7 @@ public class ASTClass extends ASTType {
     if (typeDec.getTypes().length > 0) {
       root.append(innerClassRoot);
       for (TypeDeclaration innerTypeDec : typeDec.getTypes()) {
-        ASTClass innnerClass = ASTClass.fromTypeDeclaration(innerTypeDec);
+        ASTClass innnerClass = ASTClass.fromTypeDeclaration(innerTypeDec, context);
         innerClassRoot.append(innnerClass.getTree());
       }
     }
@@ -118,4 +130,17 @@ public class ASTClass extends ASTType {
     return new ASTClass(node);
   }
 
+  /**
+   * Factory Method of ASTClass which extracts texts as context specifies.
+   * 
+   * @param node
+   *          A TypeDeclaration of the class.
+   * @param context
+   *          context of the compilation unit which contains node
+   * @return ASTClass which is corresponding to node.
+   */
+  public static ASTClass fromTypeDeclaration(TypeDeclaration node, ASTContext context) {
+    return new ASTClass(node, context);
+  }
+
 }
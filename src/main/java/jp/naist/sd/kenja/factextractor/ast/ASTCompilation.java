@@ -81,6 +81,20 @@ public class ASTCompilation implements Treeable {
    *          root Tree
    */
   public ASTCompilation(CompilationUnit unit, Tree root) {
+    this(unit, root, new ASTContext());
+  }
+
+  /**
+   * Create ASTCompilation which extracts texts of AST nodes as context specifies.
+   * 
+   * @param unit
+   *          CompilationUnit of Eclipse AST
+   * @param root
+   *          root Tree
+   * @param context
+   *          context which holds the source code of unit
+   */
+  public ASTCompilation(CompilationUnit unit, Tree root, ASTContext context) {
     this.root = root;
     if (unit.getPackage() != null) {
       pack = ASTPackage.fromPackageDeclaration(unit.getPackage());
@@ -89,7 +103,7 @@ public class ASTCompilation implements Treeable {
       }
     }
 
-    addTypes(unit);
+    addTypes(unit, context);
   }
 
   /**
@@ -126,12 +140,28 @@ public class ASTCompilation implements Treeable {
    *          compilation unit of Eclipse AST
    */
   public void addTypes(CompilationUnit unit) {
+    addTypes(unit, new ASTContext());
+  }
+
+  /**
+   * add classes and interfaces to compilation unit. Enums and annotation types, which are parsed
+   * only from source level 1.5, are not extracted.
+   * 
+   * @param unit
+   *          compilation unit of Eclipse AST
+   * @param context
+   *          context which holds the source code of unit
+   */
+  public void addTypes(CompilationUnit unit, ASTContext context) {
     for (Object obj : unit.types()) {
+      if (!(obj instanceof TypeDeclaration)) {
+        continue;
+      }
       TypeDeclaration typeDec = (TypeDeclaration) obj;
       if (typeDec.isInterface()) {
         // ASTInterface i = ASTInterface.
       } else {
-        ASTClass astClass = ASTClass.fromTypeDeclaration(typeDec);
+        ASTClass astClass = ASTClass.fromTypeDeclaration(typeDec, context);
         getClassRoot().append(astClass.getTree());
       }
     }
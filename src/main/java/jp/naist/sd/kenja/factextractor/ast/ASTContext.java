@@ -0,0 +1,229 @@
+package jp.naist.sd.kenja.factextractor.ast;
+
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.SourceSlice;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A class which holds the source code and settings shared while a compilation unit is converted
+ * to Historage.
+ *
+ * @author Kenji Fujiwara
+ *
+ */
+public class ASTContext {
+
+  /**
+   * How texts of method bodies, parameters and super classes are extracted.
+   */
+  public enum BodyExtraction {
+    /**
+     * print AST nodes by the flattener of Eclipse AST.
+     */
+    FLATTEN,
+
+    /**
+     * copy the source code of AST nodes as it is.
+     */
+    SOURCE,
+
+    /**
+     * copy the source code of AST nodes with whitespaces at the beginning and the end of each line
+     * removed and line separators replaced with '\n'.
+     */
+    NORMALIZED_SOURCE,
+
+    /**
+     * skip method bodies. body blobs are left out, and the parser does not build statements of
+     * method bodies.
+     */
+    NONE
+  }
+
+  /**
+   * source code of the compilation unit. null if it is not available.
+   */
+  private char[] source;
+
+  /**
+   * how texts of AST nodes are extracted.
+   */
+  private BodyExtraction extraction;
+
+  /**
+   * cache of texts of methods. null if methods are not cached.
+   */
+  private MethodBodyCache methodBodyCache;
+
+  /**
+   * Create ASTContext which flattens AST nodes.
+   */
+  public ASTContext() {
+    this(null, BodyExtraction.FLATTEN);
+  }
+
+  /**
+   * Create ASTContext.
+   *
+   * @param source
+   *          source code which the compilation unit was parsed from
+   * @param extraction
+   *          how texts of AST nodes are extracted. FLATTEN is used instead of SOURCE and
+   *          NORMALIZED_SOURCE if source is null.
+   */
+  public ASTContext(char[] source, BodyExtraction extraction) {
+    this(source, extraction, null);
+  }
+
+  /**
+   * Create ASTContext which reuses texts of methods cached by earlier compilation units.
+   *
+   * @param source
+   *          source code which the compilation unit was parsed from
+   * @param extraction
+   *          how texts of AST nodes are extracted. FLATTEN is used instead of SOURCE and
+   *          NORMALIZED_SOURCE if source is null.
+   * @param methodBodyCache
+   *          cache of texts of methods, or null if methods are not cached. It is not used if
+   *          source is null.
+   */
+  public ASTContext(char[] source, BodyExtraction extraction, MethodBodyCache methodBodyCache) {
+    this.source = source;
+    if (source != null) {
+      this.methodBodyCache = methodBodyCache;
+    }
+    if (source == null && extraction != BodyExtraction.NONE) {
+      this.extraction = BodyExtraction.FLATTEN;
+    } else {
+      this.extraction = extraction;
+    }
+  }
+
+  /**
+   * Return true if method bodies are skipped.
+   *
+   * @return true if body blobs are left out
+   */
+  public boolean skipsBodies() {
+    return extraction == BodyExtraction.NONE;
+  }
+
+  /**
+   * Return text of an AST node.
+   *
+   * @param node
+   *          AST node
+   * @return text of the node
+   */
+  public String textOf(ASTNode node) {
+    if (source == null) {
+      return node.toString();
+    }
+    switch (extraction) {
+      case SOURCE:
+        return new String(source, node.getStartPosition(), node.getLength());
+      case NORMALIZED_SOURCE:
+        return normalize(node.getStartPosition(), node.getLength());
+      default:
+        return node.toString();
+    }
+  }
+
+  /**
+   * Return text of an AST node which ends with a line separator. The source code is not copied if
+   * it is extracted as it is.
+   *
+   * @param node
+   *          AST node
+   * @return String, or SourceSlice which refers to the source code
+   */
+  public CharSequence linesOf(ASTNode node) {
+    if (source != null && extraction == BodyExtraction.SOURCE) {
+      int start = node.getStartPosition();
+      int length = node.getLength();
+      boolean terminated = length == 0 || source[start + length - 1] != '\n';
+      return new SourceSlice(source, start, length, terminated);
+    }
+    String text = textOf(node);
+    if (text.endsWith("\n")) {
+      return text;
+    }
+    return text + "\n";
+  }
+
+  /**
+   * Find cached texts of a method whose source code is the same.
+   *
+   * @param node
+   *          AST node of the method
+   * @return cached texts, or null if they are not cached
+   */
+  MethodBodyCache.Entry findMethod(ASTNode node) {
+    if (methodBodyCache == null) {
+      return null;
+    }
+    return methodBodyCache.get(source, node.getStartPosition(), node.getLength());
+  }
+
+  /**
+   * Cache texts of a method. Texts are copied, so they do not refer to the source code.
+   *
+   * @param node
+   *          AST node of the method
+   * @param body
+   *          body blob, or null if bodies are skipped
+   * @param parameters
+   *          parameters blob
+   */
+  void cacheMethod(ASTNode node, Blob body, Blob parameters) {
+    if (methodBodyCache == null) {
+      return;
+    }
+    ObjectId bodyId = null;
+    ObjectId parametersId = null;
+    if (methodBodyCache.isIdsEnabled()) {
+      bodyId = body == null ? null : body.getId();
+      parametersId = parameters.getId();
+    }
+    methodBodyCache.put(source, node.getStartPosition(), node.getLength(),
+        body == null ? null : body.getBody(), bodyId, parameters.getBody(), parametersId);
+  }
+
+  /**
+   * Copy a range of the source code with each line trimmed in a single pass.
+   */
+  private String normalize(int start, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    int end = start + length;
+    int lineEnd = 0;
+    boolean atLineStart = true;
+    for (int i = start; i < end; i++) {
+      char ch = source[i];
+      if (ch == '\r') {
+        if (i + 1 < end && source[i + 1] == '\n') {
+          continue;
+        }
+        ch = '\n';
+      }
+
+      if (ch == '\n') {
+        builder.setLength(lineEnd);
+        builder.append('\n');
+        lineEnd = builder.length();
+        atLineStart = true;
+      } else if (Character.isWhitespace(ch)) {
+        if (!atLineStart) {
+          builder.append(ch);
+        }
+      } else {
+        builder.append(ch);
+        lineEnd = builder.length();
+        atLineStart = false;
+      }
+    }
+    builder.setLength(lineEnd);
+    return builder.toString();
+  }
+}
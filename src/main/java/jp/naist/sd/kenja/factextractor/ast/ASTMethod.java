@@ -18,7 +18,7 @@ import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 public class ASTMethod implements Treeable {
 
   /**
-   * A Blob instance corresponding to method body.
+   * A Blob instance corresponding to method body. null if bodies are skipped.
    */
   private Blob body;
 
@@ -66,12 +66,31 @@ public class ASTMethod implements Treeable {
    *          MethodDeclaration of Eclipse AST
    */
   protected ASTMethod(MethodDeclaration node) {
+    this(node, new ASTContext());
+  }
+
+  /**
+   * Factory method of ASTMethod from MethodDeclaration of Eclipse AST.
+   * 
+   * @param node
+   *          MethodDeclaration of Eclipse AST
+   * @param context
+   *          context of the compilation unit which contains node
+   */
+  protected ASTMethod(MethodDeclaration node, ASTContext context) {
     rootTreeName = getTreeName(node);
     root = new Tree(rootTreeName);
 
     isConstructor = node.isConstructor();
-    setBody(node);
-    setParameters(node.parameters());
+    MethodBodyCache.Entry cached = context.findMethod(node);
+    if (cached != null) {
+      setBody(cached);
+      setParameters(cached);
+    } else {
+      setBody(node, context);
+      setParameters(node.parameters(), context);
+      context.cacheMethod(node, body, parameters);
+    }
   }
 
   /**
@@ -107,31 +126,65 @@ public class ASTMethod implements Treeable {
    * 
    * @param node
    *          MethodDeclaration of Eclipse AST
+   * @param context
+   *          context of the compilation unit which contains node
    */
-  private void setBody(MethodDeclaration node) {
+  private void setBody(MethodDeclaration node, ASTContext context) {
+    if (context.skipsBodies()) {
+      return;
+    }
     body = new Blob(BODY_BLOB_NAME);
     if (node.getBody() == null) {
       body.setBody("");
     } else {
-      body.setBody(node.getBody().toString());
+      body.setBody(context.linesOf(node.getBody()));
     }
 
     root.append(body);
   }
 
+  /**
+   * Set method body cached from another method of the same source code.
+   *
+   * @param cached
+   *          cached texts of the method
+   */
+  private void setBody(MethodBodyCache.Entry cached) {
+    if (cached.getBody() == null) {
+      return;
+    }
+    body = new Blob(BODY_BLOB_NAME);
+    body.setBody(cached.getBody(), cached.getBodyId());
+    root.append(body);
+  }
+
+  /**
+   * Set method parameters cached from another method of the same source code.
+   *
+   * @param cached
+   *          cached texts of the method
+   */
+  private void setParameters(MethodBodyCache.Entry cached) {
+    parameters = new Blob(PARAMETERS_BLOB_NAME);
+    root.append(parameters);
+    parameters.setBody(cached.getParameters(), cached.getParametersId());
+  }
+
   /**
    * Read and set method parameters to the Blob.
    * 
    * @param parametersList
    *          list of parameters
+   * @param context
+   *          context of the compilation unit which contains parameters
    */
-  private void setParameters(List parametersList) {
+  private void setParameters(List parametersList, ASTContext context) {
     parameters = new Blob(PARAMETERS_BLOB_NAME);
     root.append(parameters);
     String parameterBody = "";
     for (Object item : parametersList) {
       SingleVariableDeclaration parameter = (SingleVariableDeclaration) item;
-      parameterBody += parameter.getType().toString();
+      parameterBody += context.textOf(parameter.getType());
       parameterBody += " ";
       parameterBody += parameter.getName();
       for (int dimension = 0; dimension < parameter.getExtraDimensions(); dimension++) {
@@ -185,6 +238,19 @@ public class ASTMethod implements Treeable {
     return new ASTMethod(node);
   }
 
+  /**
+   * Factory method of ASTMethod which extracts texts as context specifies.
+   * 
+   * @param node
+   *          MethodDeclaration of Eclipse AST
+   * @param context
+   *          context of the compilation unit which contains node
+   * @return ASTMethod instance created from MethodDeclaration
+   */
+  public static ASTMethod fromMethodDeclaralation(MethodDeclaration node, ASTContext context) {
+    return new ASTMethod(node, context);
+  }
+
   @Override
   public Tree getTree() {
     return root;
@@ -0,0 +1,226 @@
+package jp.naist.sd.kenja.factextractor.ast;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A cache of texts of method bodies and parameters keyed by the source code of methods.
+ *
+ * Most methods are not changed between versions of a file, so a method whose source code is the
+ * same as a cached one reuses its texts instead of flattening its body again. Methods are found by
+ * a 64 bit hash of their source code, and the source code is compared on a hit, so a collision of
+ * hashes never returns texts of another method. The least recently used entries are evicted when
+ * the total size of entries exceeds the limit. If ids are enabled, ids of the body and parameters
+ * blobs are computed once when an entry is added and reused with the texts.
+ *
+ * A cache may be shared by threads. The texts depend on settings of extraction, so a cache must
+ * not be shared by GitTreeCreators of different settings.
+ */
+public class MethodBodyCache {
+  /**
+   * estimated size of an entry other than its texts in bytes.
+   */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Texts of a cached method.
+   */
+  public static class Entry {
+    private final char[] source;
+
+    private final String body;
+
+    private final ObjectId bodyId;
+
+    private final String parameters;
+
+    private final ObjectId parametersId;
+
+    private Entry(char[] source, String body, ObjectId bodyId, String parameters,
+        ObjectId parametersId) {
+      this.source = source;
+      this.body = body;
+      this.bodyId = bodyId;
+      this.parameters = parameters;
+      this.parametersId = parametersId;
+    }
+
+    /**
+     * Return the text of the body.
+     *
+     * @return text of the body, or null if bodies are skipped
+     */
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * Return the id of the body blob.
+     *
+     * @return id, or null if ids are not enabled or bodies are skipped
+     */
+    public ObjectId getBodyId() {
+      return bodyId;
+    }
+
+    public String getParameters() {
+      return parameters;
+    }
+
+    /**
+     * Return the id of the parameters blob.
+     *
+     * @return id, or null if ids are not enabled
+     */
+    public ObjectId getParametersId() {
+      return parametersId;
+    }
+
+    private long getSize() {
+      long size = ENTRY_OVERHEAD + source.length * 2L + parameters.length() * 2L;
+      if (body != null) {
+        size += body.length() * 2L;
+      }
+      return size;
+    }
+  }
+
+  private final long maxSize;
+
+  private final boolean idsEnabled;
+
+  private long size;
+
+  private long hits;
+
+  private long misses;
+
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(16, 0.75f,
+      true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+      if (size <= maxSize) {
+        return false;
+      }
+      // removes as many entries as needed, not only the eldest one.
+      Iterator<Entry> iterator = values().iterator();
+      while (size > maxSize && iterator.hasNext()) {
+        size -= iterator.next().getSize();
+        iterator.remove();
+      }
+      return false;
+    }
+  };
+
+  /**
+   * Create a MethodBodyCache.
+   *
+   * @param maxSize
+   *          maximum total size of entries in bytes
+   * @param idsEnabled
+   *          true if ids of blobs are cached with texts
+   */
+  public MethodBodyCache(long maxSize, boolean idsEnabled) {
+    this.maxSize = maxSize;
+    this.idsEnabled = idsEnabled;
+  }
+
+  public boolean isIdsEnabled() {
+    return idsEnabled;
+  }
+
+  /**
+   * Find the texts of a method.
+   *
+   * @param source
+   *          source code of the compilation unit
+   * @param start
+   *          start position of the method
+   * @param length
+   *          length of the method
+   * @return cached texts, or null if the method is not cached
+   */
+  public synchronized Entry get(char[] source, int start, int length) {
+    Entry entry = entries.get(hash(source, start, length));
+    if (entry == null || !matches(entry.source, source, start, length)) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry;
+  }
+
+  /**
+   * Add the texts of a method. The source code of the method is copied.
+   *
+   * @param source
+   *          source code of the compilation unit
+   * @param start
+   *          start position of the method
+   * @param length
+   *          length of the method
+   * @param body
+   *          text of the body, or null if bodies are skipped
+   * @param bodyId
+   *          id of the body blob, or null if ids are not enabled or bodies are skipped
+   * @param parameters
+   *          text of the parameters
+   * @param parametersId
+   *          id of the parameters blob, or null if ids are not enabled
+   * @return added entry
+   */
+  public Entry put(char[] source, int start, int length, String body, ObjectId bodyId,
+      String parameters, ObjectId parametersId) {
+    long key = hash(source, start, length);
+    Entry entry = new Entry(Arrays.copyOfRange(source, start, start + length), body, bodyId,
+        parameters, parametersId);
+    synchronized (this) {
+      Entry old = entries.remove(key);
+      if (old != null) {
+        size -= old.getSize();
+      }
+      size += entry.getSize();
+      entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Return the FNV-1a hash of a range of source code.
+   */
+  private static long hash(char[] source, int start, int length) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = start; i < start + length; i++) {
+      hash = (hash ^ source[i]) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static boolean matches(char[] cached, char[] source, int start, int length) {
+    if (cached.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (cached[i] != source[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
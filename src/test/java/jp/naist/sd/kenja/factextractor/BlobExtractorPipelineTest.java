@@ -0,0 +1,204 @@
+package jp.naist.sd.kenja.factextractor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+/**
+ * Tests of the stages of BlobExtractor, which are in the same package to fail parsing on purpose.
+ */
+public class BlobExtractorPipelineTest {
+  /**
+   * size of each blob, which takes two permits of in-flight bytes.
+   */
+  private static final int BLOB_SIZE = 2000;
+
+  private File baseDir;
+
+  private Repository repo;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    repo = new FileRepository(new File(baseDir, "repo.git"));
+    repo.create(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  /**
+   * Insert blobs whose source code starts with a prefix and is padded to BLOB_SIZE.
+   */
+  private List<String> insertBlobs(String prefix, int count) throws IOException {
+    List<String> names = new ArrayList<String>();
+    ObjectInserter inserter = repo.newObjectInserter();
+    try {
+      for (int i = 0; i < count; i++) {
+        String src = prefix + i + " {}\n";
+        src += "//" + Strings.repeat(" ", BLOB_SIZE - src.length() - 3) + "\n";
+        byte[] data = src.getBytes(Charsets.US_ASCII);
+        names.add(inserter.insert(Constants.OBJ_BLOB, data).name());
+      }
+      inserter.flush();
+    } finally {
+      inserter.release();
+    }
+    return names;
+  }
+
+  private void extract(BlobExtractor extractor, List<String> names) throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (String name : names) {
+      input.append(name).append("\n");
+    }
+    extractor.extract(new BufferedReader(new StringReader(input.toString())));
+  }
+
+  @Test(timeout = 60000)
+  public void limitBytesInFlight() throws IOException {
+    List<String> names = insertBlobs("class C", 40);
+    SlowOutput output = new SlowOutput();
+    FakeCreator creator = new FakeCreator(output);
+    // two blobs fit in the limit, while eight parse threads would take more.
+    BlobExtractor extractor = new BlobExtractor(creator, repo, output, 8,
+        new ExtractedBlobIndex(), 4, 4, 2 * BLOB_SIZE + 100);
+    extract(extractor, names);
+
+    assertEquals(new HashSet<String>(names), output.names);
+    assertTrue(creator.maxInFlight > 0);
+    assertTrue(creator.maxInFlight <= 2);
+  }
+
+  @Test(timeout = 60000)
+  public void releasePermitsOfFailures() throws IOException {
+    List<String> names = new ArrayList<String>();
+    names.addAll(insertBlobs("FAIL", 5));
+    names.addAll(insertBlobs("class C", 3));
+    names.addAll(insertBlobs("DEEP", 5));
+    SlowOutput output = new SlowOutput();
+    FakeCreator creator = new FakeCreator(output);
+    // a blob takes all permits, so a permit which is not released stops the extraction.
+    BlobExtractor extractor = new BlobExtractor(creator, repo, output, 2,
+        new ExtractedBlobIndex(), 1, 1, 1);
+    extract(extractor, names);
+
+    assertEquals(new HashSet<String>(names.subList(5, 8)), output.names);
+    assertTrue(creator.getMetrics().toJson(true).contains("\"failures\":10,"));
+  }
+
+  @Test(timeout = 60000)
+  public void blockWhileQueuesAreFull() throws IOException {
+    List<String> names = insertBlobs("class C", 100);
+    SlowOutput output = new SlowOutput();
+    // the queue of each stage has 4 entries, so producers wait for the slow output.
+    BlobExtractor extractor = new BlobExtractor(new FakeCreator(output), repo, output, 2,
+        new ExtractedBlobIndex(), 1, 1, BlobExtractor.DEFAULT_MAX_IN_FLIGHT_BYTES);
+    extract(extractor, names);
+
+    assertEquals(new HashSet<String>(names), output.names);
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void rejectAfterShutdown() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1), new BlockingPolicy());
+    executor.shutdown();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+  }
+
+  /**
+   * An output which writes slowly and records names of syntax trees.
+   */
+  private static class SlowOutput implements SyntaxTreeOutput {
+    private final Set<String> names = new HashSet<String>();
+
+    private FakeCreator creator;
+
+    @Override
+    public long write(String name, Tree tree) throws IOException {
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        assertTrue(names.add(name));
+      }
+      creator.written();
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * A GitTreeCreator which fails on source code starting with FAIL or DEEP, and counts source
+   * code between parsing and writing.
+   */
+  private static class FakeCreator extends GitTreeCreator {
+    private int inFlight;
+
+    private int maxInFlight;
+
+    public FakeCreator(SlowOutput output) {
+      output.creator = this;
+    }
+
+    @Override
+    ASTCompilation parseSourcecode(char[] src) {
+      String text = new String(src);
+      if (text.startsWith("FAIL")) {
+        throw new IllegalStateException("broken parser");
+      } else if (text.startsWith("DEEP")) {
+        throw new StackOverflowError();
+      }
+      synchronized (this) {
+        inFlight++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+      }
+      return super.parseSourcecode(src);
+    }
+
+    synchronized void written() {
+      inFlight--;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import jp.naist.sd.kenja.factextractor.BinaryFormatTreeReader;
+import jp.naist.sd.kenja.factextractor.BinaryFormatTreeWriter;
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.TreeEntry;
+
+import org.junit.Test;
+
+public class BinaryFormatTreeWriterTest {
+
+  private void assertTreeEquals(Tree expected, Tree actual) {
+    assertEquals(expected.getName(), actual.getName());
+    List<TreeEntry> expectedEntries = expected.getSortedEntries();
+    List<TreeEntry> actualEntries = actual.getSortedEntries();
+    assertEquals(expectedEntries.size(), actualEntries.size());
+    for (int i = 0; i < expectedEntries.size(); i++) {
+      TreeEntry expectedEntry = expectedEntries.get(i);
+      TreeEntry actualEntry = actualEntries.get(i);
+      if (expectedEntry instanceof Blob) {
+        assertEquals(expectedEntry.getName(), actualEntry.getName());
+        assertEquals(((Blob) expectedEntry).getBody(), ((Blob) actualEntry).getBody());
+      } else {
+        assertTreeEquals((Tree) expectedEntry, (Tree) actualEntry);
+      }
+    }
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryFormatTreeWriter writer = new BinaryFormatTreeWriter(bytes);
+    Tree tree = SampleTrees.create("{\n\n  x();\n\n}", "stop(int)");
+    writer.writeTree(tree);
+    writer.writeTree(tree);
+    assertEquals(bytes.size(), writer.getBytesWritten());
+
+    BinaryFormatTreeReader reader = new BinaryFormatTreeReader(new ByteArrayInputStream(
+        bytes.toByteArray()));
+    assertTreeEquals(tree, reader.readTree());
+    assertTreeEquals(tree, reader.readTree());
+    assertNull(reader.readTree());
+  }
+
+  @Test
+  public void emptyStream() throws IOException {
+    BinaryFormatTreeReader reader = new BinaryFormatTreeReader(new ByteArrayInputStream(
+        new byte[0]));
+    assertNull(reader.readTree());
+  }
+}
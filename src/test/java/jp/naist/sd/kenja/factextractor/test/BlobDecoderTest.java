@@ -0,0 +1,41 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import jp.naist.sd.kenja.factextractor.BlobDecoder;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class BlobDecoderTest {
+
+  private String decode(BlobDecoder decoder, byte[] bytes) {
+    decoder.decode(bytes, 0, bytes.length);
+    return new String(decoder.toArray());
+  }
+
+  @Test
+  public void skipByteOrderMark() {
+    BlobDecoder decoder = new BlobDecoder(Charsets.ISO_8859_1);
+    byte[] utf8 = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'c', (byte) 0xc3, (byte) 0xa9};
+    assertEquals("c\u00e9", decode(decoder, utf8));
+    byte[] utf16 = {(byte) 0xff, (byte) 0xfe, 'c', 0, (byte) 0xe9, 0};
+    assertEquals("c\u00e9", decode(decoder, utf16));
+    byte[] latin1 = {'c', (byte) 0xe9};
+    assertEquals("c\u00e9", decode(decoder, latin1));
+  }
+
+  @Test
+  public void decodeAfterLargeBlob() {
+    BlobDecoder decoder = new BlobDecoder(Charsets.UTF_8);
+    byte[] large = new byte[1 << 20];
+    Arrays.fill(large, (byte) 'x');
+    assertEquals(large.length, decode(decoder, large).length());
+
+    assertEquals("class A {}", decode(decoder, "class A {}".getBytes(Charsets.UTF_8)));
+    assertEquals(10, decoder.getLength());
+  }
+}
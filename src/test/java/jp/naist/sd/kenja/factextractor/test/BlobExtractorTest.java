@@ -0,0 +1,107 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jp.naist.sd.kenja.factextractor.BlobExtractor;
+import jp.naist.sd.kenja.factextractor.ExtractedBlobIndex;
+import jp.naist.sd.kenja.factextractor.GitTreeCreator;
+import jp.naist.sd.kenja.factextractor.TextFileOutput;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class BlobExtractorTest {
+  private static final int NUM_BLOBS = 24;
+
+  private File baseDir;
+
+  private Repository repo;
+
+  private String blobIds;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    repo = new FileRepository(new File(baseDir, "repo.git"));
+    repo.create(true);
+
+    StringBuilder ids = new StringBuilder();
+    ObjectInserter inserter = repo.newObjectInserter();
+    try {
+      for (int i = 0; i < NUM_BLOBS; i++) {
+        StringBuilder src = new StringBuilder();
+        src.append("package p").append(i).append(";\n");
+        src.append("public class C").append(i).append(" {\n");
+        src.append("  private int f").append(i).append(";\n");
+        for (int j = 0; j <= i; j++) {
+          src.append("  void m").append(j).append("(int a) {\n    call(a);\n  }\n");
+        }
+        src.append("}\n");
+        byte[] data = src.toString().getBytes(Charsets.US_ASCII);
+        ids.append(inserter.insert(Constants.OBJ_BLOB, data).name()).append("\n");
+      }
+      inserter.flush();
+    } finally {
+      inserter.release();
+    }
+    blobIds = ids.toString();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private File extract(int numThreads) throws IOException {
+    File syntaxTreeDir = new File(baseDir, "threads" + numThreads);
+    TextFileOutput output = new TextFileOutput(syntaxTreeDir);
+    BlobExtractor extractor = new BlobExtractor(new GitTreeCreator(), repo, output, numThreads,
+        new ExtractedBlobIndex());
+    extractor.extract(new BufferedReader(new StringReader(blobIds)));
+    output.close();
+    return syntaxTreeDir;
+  }
+
+  private Map<String, File> listFiles(File dir) {
+    Map<String, File> files = new TreeMap<String, File>();
+    Collection<File> found = FileUtils.listFiles(dir, null, true);
+    for (File file : found) {
+      files.put(file.getAbsolutePath().substring(dir.getAbsolutePath().length()), file);
+    }
+    return files;
+  }
+
+  @Test
+  public void sameOutputWithThreads() throws IOException {
+    Map<String, File> serial = listFiles(extract(1));
+    Map<String, File> parallel = listFiles(extract(4));
+
+    assertEquals(NUM_BLOBS, serial.size());
+    assertEquals(serial.keySet(), parallel.keySet());
+    for (Map.Entry<String, File> entry : serial.entrySet()) {
+      byte[] expected = Files.toByteArray(entry.getValue());
+      assertTrue(expected.length > 0);
+      assertArrayEquals(entry.getKey(), expected, Files.toByteArray(parallel.get(entry.getKey())));
+    }
+  }
+}
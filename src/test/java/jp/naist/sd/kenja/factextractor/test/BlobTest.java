@@ -0,0 +1,70 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.SourceSlice;
+
+import org.junit.Test;
+
+public class BlobTest {
+
+  /**
+   * Count lines as the baseline TextFormatTreeWriter did.
+   */
+  private int countBySplit(String body) {
+    if (body.equals("")) {
+      return 0;
+    }
+    return body.split("\n").length;
+  }
+
+  @Test
+  public void lineCountAsSplit() {
+    String[] bodies = {"", "\n", "\n\n", "a", "a\n", "a\n\n", "\na", "\n\na\n", "a\nb",
+        "a\nb\n", "a\n\nb\n", "{\n  x();\n}\n", " \n", "a\r\nb\r\n"};
+    for (String body : bodies) {
+      assertEquals(body, countBySplit(body), new Blob(body, "body").getLineCount());
+    }
+  }
+
+  @Test
+  public void lineCountOfSlice() {
+    char[] source = "{\n  x();\n}\n\nint y;\n".toCharArray();
+    Blob blob = new Blob("body");
+    blob.setBody(new SourceSlice(source, 0, 10, true));
+
+    assertEquals(countBySplit(blob.getBody()), blob.getLineCount());
+  }
+
+  @Test
+  public void compareNonAsciiBodies() {
+    Blob blob1 = new Blob("caf\u00e9\n", "comment");
+    Blob blob2 = new Blob("caf\u00e8\n", "comment");
+
+    // both bodies are stored as "caf?", so their ids are equal but not exact.
+    assertEquals(blob1.getId(), blob2.getId());
+    assertFalse(blob1.hasExactId());
+    assertFalse(blob1.contentEquals(blob2));
+    assertTrue(blob1.contentEquals(new Blob("caf\u00e9\n", "other")));
+  }
+
+  @Test
+  public void compareAsciiBodiesById() {
+    Blob blob1 = new Blob("run();\n", "body");
+    Blob blob2 = new Blob("run();\n", "body");
+    assertFalse(blob1.hasExactId());
+
+    assertEquals(blob1.getId(), blob2.getId());
+    assertTrue(blob1.hasExactId());
+    assertTrue(blob1.contentEquals(blob2));
+    assertFalse(blob1.contentEquals(new Blob("stop();\n", "body")));
+
+    // an id given with the body is not known to be exact.
+    Blob cached = new Blob("body");
+    cached.setBody("run();\n", blob1.getId());
+    assertFalse(cached.hasExactId());
+  }
+}
@@ -0,0 +1,84 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jp.naist.sd.kenja.factextractor.ParserProfile;
+import jp.naist.sd.kenja.factextractor.SourceParser;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+import jp.naist.sd.kenja.factextractor.ast.ASTContext;
+import jp.naist.sd.kenja.factextractor.ast.ASTContext.BodyExtraction;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+public class BodyExtractionTest {
+  private static final String SOURCE = "package p;\n"
+      + "class Sample extends Base {\n"
+      + "  void run(int  a) {\n"
+      + "    if (a > 0)   {\n"
+      + "        call(a);\t\n"
+      + "    }\n"
+      + "  }\n"
+      + "}\n";
+
+  private Tree parse(String source, BodyExtraction extraction) {
+    char[] src = source.toCharArray();
+    SourceParser parser = new SourceParser(ParserProfile.forName(ParserProfile.DEFAULT_NAME));
+    CompilationUnit unit = parser.parse(src, extraction == BodyExtraction.NONE);
+    ASTContext context = new ASTContext(src, extraction);
+    return new ASTCompilation(unit, new Tree(""), context).getTree();
+  }
+
+  private Tree getClass(Tree root) {
+    return root.getChild("[CN]").getChild("Sample");
+  }
+
+  private Tree getMethod(Tree root) {
+    return getClass(root).getChild("[MT]").getChild("run(int)");
+  }
+
+  @Test
+  public void sourceBody() {
+    Tree root = parse(SOURCE, BodyExtraction.SOURCE);
+
+    // the body is copied from the source code as it is, and ends with a line separator.
+    assertEquals("{\n    if (a > 0)   {\n        call(a);\t\n    }\n  }\n",
+        getMethod(root).getBlob("body").getBody());
+    assertEquals("int a\n", getMethod(root).getBlob("parameters").getBody());
+    assertEquals("Base\n", getClass(root).getBlob("extend").getBody());
+  }
+
+  @Test
+  public void normalizedBody() {
+    Tree root = parse(SOURCE, BodyExtraction.NORMALIZED_SOURCE);
+
+    // each line is trimmed, and spaces inside a line are kept.
+    assertEquals("{\nif (a > 0)   {\ncall(a);\n}\n}\n",
+        getMethod(root).getBlob("body").getBody());
+    assertEquals("int a\n", getMethod(root).getBlob("parameters").getBody());
+    assertEquals("Base\n", getClass(root).getBlob("extend").getBody());
+  }
+
+  @Test
+  public void normalizedCarriageReturns() {
+    Tree root = parse(SOURCE.replace("\n", "\r\n"), BodyExtraction.NORMALIZED_SOURCE);
+
+    assertEquals("{\nif (a > 0)   {\ncall(a);\n}\n}\n",
+        getMethod(root).getBlob("body").getBody());
+  }
+
+  @Test
+  public void noBody() {
+    Tree root = parse(SOURCE, BodyExtraction.NONE);
+
+    // signatures are kept without body blobs.
+    Tree method = getMethod(root);
+    assertFalse(method.hasBlob("body"));
+    assertEquals("int a\n", method.getBlob("parameters").getBody());
+    assertEquals("Base\n", getClass(root).getBlob("extend").getBody());
+    assertTrue(root.hasBlob("package"));
+  }
+}
@@ -0,0 +1,99 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jp.naist.sd.kenja.factextractor.DirectoryOutput;
+import jp.naist.sd.kenja.factextractor.FileFormatTreeReader;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.TreeDiff;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class DirectoryOutputTest {
+  private File baseDir;
+
+  private File treeDir;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+    treeDir = new File(baseDir, "src/Sample.java");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private void setLastModified(long time) {
+    for (File file : FileUtils.listFiles(treeDir, null, true)) {
+      assertTrue(file.setLastModified(time));
+    }
+  }
+
+  @Test
+  public void writeAll() throws IOException {
+    DirectoryOutput output = new DirectoryOutput(baseDir);
+    long written = output.write("src/Sample.java", SampleTrees.create("{\n}", "stop()"));
+
+    assertEquals(FileUtils.sizeOfDirectory(treeDir), written);
+    assertEquals("jp.naist.sd\n", Files.toString(new File(treeDir, "package"), Charsets.US_ASCII));
+    assertTrue(new File(treeDir, "[CN]/Sample/[MT]/stop()/parameters").isFile());
+  }
+
+  @Test
+  public void writeChangesOnly() throws IOException {
+    DirectoryOutput output = new DirectoryOutput(baseDir);
+    output.write("src/Sample.java", SampleTrees.create("{\n}", "stop()"));
+    // modification times may be as coarse as a second.
+    long old = (System.currentTimeMillis() - 100000) / 1000 * 1000;
+    setLastModified(old);
+
+    long written = output.write("src/Sample.java",
+        SampleTrees.create("{\n  x();\n}", "stop(int)"));
+
+    File classDir = new File(treeDir, "[CN]/Sample");
+    assertEquals("{\n  x();\n}\n", Files.toString(new File(classDir, "[MT]/run()/body"),
+        Charsets.US_ASCII));
+    assertFalse(new File(classDir, "[MT]/stop()").exists());
+    assertTrue(new File(classDir, "[MT]/stop(int)/body").isFile());
+    assertEquals(old, new File(classDir, "extend").lastModified());
+    assertEquals(old, new File(treeDir, "package").lastModified());
+    // run() body, the body of stop(int), and the comment whose non-ASCII chars are not read back.
+    assertEquals(11 + 4 + 7, written);
+  }
+
+  @Test
+  public void replaceFile() throws IOException {
+    Files.createParentDirs(treeDir);
+    Files.write("[TS] [CN]\n", treeDir, Charsets.US_ASCII);
+
+    new DirectoryOutput(baseDir).write("src/Sample.java", SampleTrees.create("{\n}", "stop()"));
+    assertTrue(new File(treeDir, "[CN]/Sample/extend").isFile());
+  }
+
+  @Test
+  public void readBack() throws IOException {
+    Tree tree = SampleTrees.create("{\n}", "stop()");
+    new DirectoryOutput(baseDir).write("src/Sample.java", tree);
+
+    List<TreeDiff.Change> changes = TreeDiff.compare(new FileFormatTreeReader(treeDir).readTree(),
+        tree);
+    assertEquals(1, changes.size());
+    assertEquals("MODIFIED [CN]/Sample/comment", changes.get(0).toString());
+    assertNull(new FileFormatTreeReader(new File(baseDir, "missing")).readTree());
+  }
+}
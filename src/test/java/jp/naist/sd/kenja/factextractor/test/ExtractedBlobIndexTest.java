@@ -0,0 +1,138 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import jp.naist.sd.kenja.factextractor.ExtractedBlobIndex;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class ExtractedBlobIndexTest {
+  private static final ObjectId BLOB1 = ObjectId
+      .fromString("1111111111111111111111111111111111111111");
+
+  private static final ObjectId BLOB2 = ObjectId
+      .fromString("2222222222222222222222222222222222222222");
+
+  private File baseDir;
+
+  private File indexFile;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+    indexFile = new File(baseDir, ExtractedBlobIndex.DEFAULT_FILE_NAME);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test
+  public void resumeWithSameStamp() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertTrue(index.claim(BLOB1));
+    index.markExtracted(BLOB1);
+    // a claimed blob whose syntax tree is not written is extracted again by the next run.
+    assertTrue(index.claim(BLOB2));
+    index.close();
+
+    index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertFalse(index.claim(BLOB1));
+    assertTrue(index.claim(BLOB2));
+    index.close();
+  }
+
+  @Test
+  public void skipBrokenLine() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    index.markExtracted(BLOB1);
+    index.close();
+    // the previous run was killed while writing a line.
+    Files.append(BLOB2.name().substring(0, 20), indexFile, Charsets.US_ASCII);
+
+    index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertFalse(index.claim(BLOB1));
+    assertTrue(index.claim(BLOB2));
+    index.close();
+  }
+
+  @Test
+  public void appendAfterBrokenLine() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    index.markExtracted(BLOB1);
+    index.close();
+    Files.append(BLOB2.name().substring(0, 20), indexFile, Charsets.US_ASCII);
+
+    // the blob id appended after the broken line is read by the next run.
+    index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertTrue(index.claim(BLOB2));
+    index.markExtracted(BLOB2);
+    index.close();
+
+    index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertFalse(index.claim(BLOB1));
+    assertFalse(index.claim(BLOB2));
+    index.close();
+  }
+
+  @Test
+  public void flushEachBlob() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    index.markExtracted(BLOB1);
+
+    // the run is killed before the index is closed.
+    ExtractedBlobIndex next = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertFalse(next.claim(BLOB1));
+    next.close();
+    index.close();
+  }
+
+  @Test
+  public void discardWithOtherStamp() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    index.markExtracted(BLOB1);
+    index.close();
+
+    index = ExtractedBlobIndex.open(indexFile, "binary;UTF-8");
+    assertTrue(index.claim(BLOB1));
+    index.markExtracted(BLOB1);
+    index.close();
+
+    // the file is rewritten with the new stamp.
+    index = ExtractedBlobIndex.open(indexFile, "binary;UTF-8");
+    assertFalse(index.claim(BLOB1));
+    index.close();
+    index = ExtractedBlobIndex.open(indexFile, "text;UTF-8");
+    assertTrue(index.claim(BLOB1));
+    index.close();
+  }
+
+  @Test
+  public void restampIndex() throws IOException {
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "text;flat");
+    index.markExtracted(BLOB1);
+    index.close();
+
+    assertFalse(ExtractedBlobIndex.restamp(indexFile, Arrays.asList("binary;flat"),
+        "binary;fanout-1"));
+    assertTrue(ExtractedBlobIndex.restamp(indexFile, Arrays.asList("text;flat", "text;fanout-2"),
+        "text;fanout-1"));
+
+    index = ExtractedBlobIndex.open(indexFile, "text;fanout-1");
+    assertFalse(index.claim(BLOB1));
+    index.close();
+  }
+}
@@ -0,0 +1,126 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jp.naist.sd.kenja.factextractor.ExtractedBlobIndex;
+import jp.naist.sd.kenja.factextractor.FanoutLayout;
+import jp.naist.sd.kenja.factextractor.GitTreeCreator;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class FanoutLayoutTest {
+  private static final String BLOB1 = "abcdef1111111111111111111111111111111111";
+
+  private static final String BLOB2 = "abcdef2222222222222222222222222222222222";
+
+  private File baseDir;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private void create(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.getName(), file, Charsets.US_ASCII);
+  }
+
+  @Test
+  public void migrateToDeeperLayout() throws IOException {
+    create(new FanoutLayout(0).getFile(baseDir, BLOB1));
+    create(new FanoutLayout(1).getFile(baseDir, BLOB2));
+    File other = new File(baseDir, "README");
+    create(other);
+
+    FanoutLayout layout = new FanoutLayout(2);
+    assertEquals(2, layout.migrate(baseDir));
+
+    assertTrue(new File(baseDir, "ab/cd/ef1111111111111111111111111111111111").isFile());
+    assertTrue(new File(baseDir, "ab/cd/ef2222222222222222222222222222222222").isFile());
+    assertEquals(layout.getFile(baseDir, BLOB1), FanoutLayout.find(baseDir, BLOB1));
+    assertTrue(other.isFile());
+  }
+
+  @Test
+  public void migrateToFlatLayout() throws IOException {
+    create(new FanoutLayout(2).getFile(baseDir, BLOB1));
+    create(new FanoutLayout(1).getFile(baseDir, BLOB2));
+
+    FanoutLayout layout = new FanoutLayout(0);
+    assertEquals(2, layout.migrate(baseDir));
+
+    assertTrue(new File(baseDir, BLOB1).isFile());
+    assertTrue(new File(baseDir, BLOB2).isFile());
+    // fan-out directories which become empty are removed.
+    assertFalse(new File(baseDir, "ab").exists());
+    assertEquals(0, layout.migrate(baseDir));
+  }
+
+  private void runCreator(String input, String... args) {
+    InputStream stdin = System.in;
+    System.setIn(new ByteArrayInputStream(input.getBytes(Charsets.US_ASCII)));
+    try {
+      GitTreeCreator.main(args);
+    } finally {
+      System.setIn(stdin);
+    }
+  }
+
+  @Test
+  public void migrateWithIndex() throws IOException {
+    File repoDir = new File(baseDir, "repo.git");
+    Repository repo = new FileRepository(repoDir);
+    repo.create(true);
+    ObjectInserter inserter = repo.newObjectInserter();
+    ObjectId blobId;
+    try {
+      byte[] src = "class Sample { void run() {} }\n".getBytes(Charsets.US_ASCII);
+      blobId = inserter.insert(Constants.OBJ_BLOB, src);
+      inserter.flush();
+    } finally {
+      inserter.release();
+      repo.close();
+    }
+    File syntaxTreeDir = new File(baseDir, "trees");
+    String input = blobId.name() + "\n";
+    runCreator(input, "--index", "--threads=1", repoDir.getPath(), syntaxTreeDir.getPath());
+
+    runCreator("", "--mode=migrate", "--layout=fanout", "--fanout-depth=1",
+        syntaxTreeDir.getPath());
+    File file = new FanoutLayout(1).getFile(syntaxTreeDir, blobId.name());
+    assertTrue(file.isFile());
+    Files.write("moved", file, Charsets.US_ASCII);
+    File indexFile = new File(syntaxTreeDir, ExtractedBlobIndex.DEFAULT_FILE_NAME);
+    String index = Files.toString(indexFile, Charsets.US_ASCII);
+
+    // the migrated index is valid for the new layout, so nothing is extracted again.
+    runCreator(input, "--index", "--threads=1", "--layout=fanout", "--fanout-depth=1",
+        repoDir.getPath(), syntaxTreeDir.getPath());
+    assertEquals("moved", Files.toString(file, Charsets.US_ASCII));
+    assertEquals(index, Files.toString(indexFile, Charsets.US_ASCII));
+    assertTrue(index.endsWith(blobId.name() + "\n"));
+  }
+}
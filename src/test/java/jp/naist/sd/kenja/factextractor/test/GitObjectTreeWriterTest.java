@@ -0,0 +1,101 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jp.naist.sd.kenja.factextractor.GitObjectTreeWriter;
+import jp.naist.sd.kenja.factextractor.Tree;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class GitObjectTreeWriterTest {
+  private File baseDir;
+
+  private Repository repo;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    repo = new FileRepository(baseDir);
+    repo.create(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private Tree createTree() {
+    Tree root = SampleTrees.create("{\n  x();\n}", "stop()");
+    // a class without fields has an empty child tree, which git does not store.
+    Tree clazz = root.getChild("[CN]").getChild("Sample");
+    clazz.append(new Tree("[FE]"));
+    return root;
+  }
+
+  private GitObjectTreeWriter write(Tree tree, Set<ObjectId> knownIds) throws IOException {
+    ObjectInserter inserter = repo.newObjectInserter();
+    try {
+      GitObjectTreeWriter writer = new GitObjectTreeWriter(inserter, knownIds);
+      writer.writeTree(tree);
+      return writer;
+    } finally {
+      inserter.release();
+    }
+  }
+
+  @Test
+  public void storeTreeWithComputedId() throws IOException {
+    Tree tree = createTree();
+    GitObjectTreeWriter writer = write(tree, new HashSet<ObjectId>());
+
+    assertEquals(tree.getId(), writer.getTreeId());
+    assertTrue(repo.getObjectDatabase().has(writer.getTreeId()));
+
+    TreeWalk walk = new TreeWalk(repo);
+    try {
+      walk.addTree(writer.getTreeId());
+      walk.setRecursive(true);
+      List<String> paths = new ArrayList<String>();
+      while (walk.next()) {
+        paths.add(walk.getPathString());
+      }
+      assertEquals(Arrays.asList("[CN]/Sample/[MT]/run()/body",
+          "[CN]/Sample/[MT]/run()/parameters", "[CN]/Sample/[MT]/stop()/body",
+          "[CN]/Sample/[MT]/stop()/parameters", "[CN]/Sample/comment", "[CN]/Sample/extend",
+          "package"), paths);
+    } finally {
+      walk.release();
+    }
+  }
+
+  @Test
+  public void skipKnownObjects() throws IOException {
+    Set<ObjectId> knownIds = new HashSet<ObjectId>();
+    GitObjectTreeWriter writer = write(createTree(), knownIds);
+    assertTrue(writer.getBytesWritten() > 0);
+    assertTrue(knownIds.contains(writer.getTreeId()));
+
+    writer = write(createTree(), knownIds);
+    assertEquals(0, writer.getBytesWritten());
+  }
+}
@@ -0,0 +1,41 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import jp.naist.sd.kenja.factextractor.ast.MethodBodyCache;
+
+import org.junit.Test;
+
+public class MethodBodyCacheTest {
+
+  @Test
+  public void getCachedMethod() {
+    MethodBodyCache cache = new MethodBodyCache(1 << 20, false);
+    char[] version1 = "class A { void run() { x(); } }".toCharArray();
+    char[] version2 = "class A {\n  int y;\n  void run() { x(); } }".toCharArray();
+    cache.put(version1, 10, 19, "{\n  x();\n}\n", null, "", null);
+
+    MethodBodyCache.Entry entry = cache.get(version2, 21, 19);
+    assertEquals("{\n  x();\n}\n", entry.getBody());
+    assertEquals("", entry.getParameters());
+    assertNull(cache.get(version2, 21, 18));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    char[] source = "void a() {} void b() {} void c() {}".toCharArray();
+    // room for two entries of 11 characters and a body of 3 characters.
+    MethodBodyCache cache = new MethodBodyCache(2 * (128 + 14 * 2), false);
+    cache.put(source, 0, 11, "{}\n", null, "", null);
+    cache.put(source, 12, 11, "{}\n", null, "", null);
+    cache.get(source, 0, 11);
+    cache.put(source, 24, 11, "{}\n", null, "", null);
+
+    assertEquals("{}\n", cache.get(source, 0, 11).getBody());
+    assertNull(cache.get(source, 12, 11));
+    assertEquals("{}\n", cache.get(source, 24, 11).getBody());
+  }
+}
@@ -0,0 +1,208 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+
+import jp.naist.sd.kenja.factextractor.PackOrder;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.PackParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class PackOrderTest {
+  private File baseDir;
+
+  private Repository repo;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    repo = createRepository("repo.git");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    repo.close();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private Repository createRepository(String name) throws IOException {
+    Repository repository = new FileRepository(new File(baseDir, name));
+    repository.create(true);
+    return repository;
+  }
+
+  private File getPackDir(Repository repository) {
+    return new File(((FileRepository) repository).getObjectsDirectory(), "pack");
+  }
+
+  private Set<String> listIndexes(Repository repository) {
+    String[] names = getPackDir(repository).list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".idx");
+      }
+    });
+    if (names == null) {
+      return new HashSet<String>();
+    }
+    return new HashSet<String>(Arrays.asList(names));
+  }
+
+  private ObjectId idFor(String content) {
+    return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+        content.getBytes(Charsets.US_ASCII));
+  }
+
+  /**
+   * Write a pack file whose blobs are in the given order, and return its index file.
+   */
+  private File writePack(Repository repository, String... contents) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.write(Constants.PACK_SIGNATURE);
+    out.writeInt(2);
+    out.writeInt(contents.length);
+    for (String content : contents) {
+      byte[] data = content.getBytes(Charsets.US_ASCII);
+      // the type and the size are in a variable length header.
+      long size = data.length;
+      int header = (Constants.OBJ_BLOB << 4) | (int) (size & 0x0f);
+      size >>>= 4;
+      while (size != 0) {
+        out.write(header | 0x80);
+        header = (int) (size & 0x7f);
+        size >>>= 7;
+      }
+      out.write(header);
+      DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+      deflater.write(data);
+      deflater.finish();
+    }
+    out.flush();
+    MessageDigest digest = Constants.newMessageDigest();
+    out.write(digest.digest(bytes.toByteArray()));
+
+    Set<String> before = listIndexes(repository);
+    ObjectInserter inserter = repository.newObjectInserter();
+    try {
+      PackParser parser = inserter.newPackParser(new ByteArrayInputStream(bytes.toByteArray()));
+      parser.parse(NullProgressMonitor.INSTANCE);
+      inserter.flush();
+    } finally {
+      inserter.release();
+    }
+
+    Set<String> added = listIndexes(repository);
+    added.removeAll(before);
+    assertEquals(1, added.size());
+    return new File(getPackDir(repository), added.iterator().next());
+  }
+
+  private List<ObjectId> idsFor(String... contents) {
+    List<ObjectId> ids = new ArrayList<ObjectId>();
+    for (String content : contents) {
+      ids.add(idFor(content));
+    }
+    return ids;
+  }
+
+  private List<ObjectId> sort(String... contents) throws IOException {
+    return new PackOrder(repo).sort(idsFor(contents));
+  }
+
+  @Test
+  public void sortByOffsets() throws IOException {
+    writePack(repo, "b\n", "c\n", "a\n");
+
+    assertEquals(idsFor("b\n", "c\n", "a\n"), sort("a\n", "b\n", "c\n"));
+  }
+
+  @Test
+  public void newestPackFirst() throws IOException {
+    File older = writePack(repo, "a\n", "b\n");
+    File newer = writePack(repo, "c\n");
+    long now = System.currentTimeMillis();
+    assertTrue(older.setLastModified(now - 20000));
+    assertTrue(newer.setLastModified(now - 10000));
+    assertEquals(idsFor("c\n", "a\n", "b\n"), sort("a\n", "b\n", "c\n"));
+
+    // only modification times of index files decide the order of packs.
+    assertTrue(older.setLastModified(now));
+    assertEquals(idsFor("a\n", "b\n", "c\n"), sort("c\n", "b\n", "a\n"));
+  }
+
+  @Test
+  public void alternatesAfterOwnPacks() throws IOException {
+    Repository shared = createRepository("shared.git");
+    Repository other = createRepository("other.git");
+    try {
+      writePack(shared, "x\n", "y\n");
+      writePack(other, "z\n");
+      writePack(repo, "a\n");
+      File objectsDir = ((FileRepository) repo).getObjectsDirectory();
+      File sharedObjectsDir = ((FileRepository) shared).getObjectsDirectory();
+      File otherObjectsDir = ((FileRepository) other).getObjectsDirectory();
+      // an absolute path, a comment and a path relative to the object directory.
+      Files.write(sharedObjectsDir.getAbsolutePath() + "\n# comment\n\n../../other.git/objects\n",
+          new File(objectsDir, "info/alternates"), Charsets.UTF_8);
+      // an alternate which refers back is loaded once.
+      Files.write(objectsDir.getAbsolutePath() + "\n",
+          new File(otherObjectsDir, "info/alternates"), Charsets.UTF_8);
+
+      assertEquals(3, new PackOrder(repo).getPackCount());
+      assertEquals(idsFor("a\n", "x\n", "y\n", "z\n"), sort("z\n", "y\n", "x\n", "a\n"));
+    } finally {
+      shared.close();
+      other.close();
+    }
+  }
+
+  @Test
+  public void looseObjectsLast() throws IOException {
+    writePack(repo, "a\n", "b\n");
+    ObjectInserter inserter = repo.newObjectInserter();
+    try {
+      inserter.insert(Constants.OBJ_BLOB, "loose1\n".getBytes(Charsets.US_ASCII));
+      inserter.insert(Constants.OBJ_BLOB, "loose2\n".getBytes(Charsets.US_ASCII));
+      inserter.flush();
+    } finally {
+      inserter.release();
+    }
+
+    // loose objects and missing objects keep the given order after packed objects.
+    assertEquals(idsFor("a\n", "b\n", "loose2\n", "missing\n", "loose1\n"),
+        sort("loose2\n", "b\n", "missing\n", "loose1\n", "a\n"));
+  }
+
+  @Test
+  public void noPacks() throws IOException {
+    assertEquals(0, new PackOrder(repo).getPackCount());
+    assertEquals(idsFor("b\n", "a\n"), sort("b\n", "a\n"));
+  }
+}
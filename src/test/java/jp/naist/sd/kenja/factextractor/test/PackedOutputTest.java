@@ -0,0 +1,118 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.ExtractedBlobIndex;
+import jp.naist.sd.kenja.factextractor.PackedOutput;
+import jp.naist.sd.kenja.factextractor.PackedTreeIndex;
+import jp.naist.sd.kenja.factextractor.Tree;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+public class PackedOutputTest {
+  private static final String BLOB1 = "1111111111111111111111111111111111111111";
+
+  private static final String BLOB2 = "2222222222222222222222222222222222222222";
+
+  private File baseDir;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private Tree createTree(String packageName) {
+    Tree root = new Tree("");
+    root.append(new Blob(packageName + "\n", "package"));
+    return root;
+  }
+
+  @Test
+  public void findInIndex() throws IOException {
+    // small segments make syntax trees spread over several segments.
+    PackedOutput output = new PackedOutput(baseDir, false, 64);
+    for (int i = 9; i >= 1; i--) {
+      output.write(Strings.repeat(Integer.toString(i), 40), createTree("p" + i));
+    }
+    output.close();
+
+    PackedTreeIndex index = PackedTreeIndex.open(baseDir);
+    assertEquals(9, index.size());
+    assertFalse(index.isBinary());
+    for (int i = 1; i <= 9; i++) {
+      byte[] data = index.read(ObjectId.fromString(Strings.repeat(Integer.toString(i), 40)));
+      assertEquals("[BN] package\n[BI] 1\np" + i + "\n", new String(data, Charsets.US_ASCII));
+    }
+    assertTrue(index.find(ObjectId.fromString(BLOB2)).getSegment() > 0);
+    assertNull(index.find(ObjectId.zeroId()));
+  }
+
+  @Test
+  public void extractBufferedRecordsAgain() throws IOException {
+    File indexFile = new File(baseDir, ExtractedBlobIndex.DEFAULT_FILE_NAME);
+    PackedOutput output = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    ExtractedBlobIndex index = ExtractedBlobIndex.open(indexFile, "stamp");
+    output.write(BLOB1, createTree("jp.naist.sd"));
+    index.markExtracted(ObjectId.fromString(BLOB1));
+    output.close();
+    PackedOutput killed = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    // the run is killed before the buffered record of BLOB2 is written to the segment.
+    killed.write(BLOB2, createTree("jp.naist"));
+    index.markExtracted(ObjectId.fromString(BLOB2));
+    index.close();
+
+    output = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    index = ExtractedBlobIndex.open(indexFile, "stamp");
+    index.setExtracted(output.getBlobIds());
+    assertFalse(index.claim(ObjectId.fromString(BLOB1)));
+    assertTrue(index.claim(ObjectId.fromString(BLOB2)));
+    assertEquals(1, output.getBlobIds().size());
+    output.close();
+    index.close();
+    // release the segment which the killed run kept open.
+    killed.close();
+  }
+
+  @Test
+  public void skipWrittenTrees() throws IOException {
+    PackedOutput output = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    assertTrue(output.write(BLOB1, createTree("jp.naist.sd")) > 0);
+    // the same blob is given twice in one run.
+    assertEquals(0, output.write(BLOB1, createTree("jp.naist.sd")));
+    output.close();
+    File segment = new File(baseDir, PackedTreeIndex.getSegmentName(0));
+    long length = segment.length();
+
+    // a run without an index file is given the same blob again.
+    output = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    assertEquals(0, output.write(BLOB1, createTree("jp.naist.sd")));
+    output.close();
+    assertEquals(length, segment.length());
+
+    // the index which was loaded by the last run is replaced.
+    output = new PackedOutput(baseDir, false, PackedOutput.DEFAULT_SEGMENT_SIZE);
+    output.write(BLOB2, createTree("jp.naist"));
+    output.close();
+    assertEquals(2, PackedTreeIndex.open(baseDir).size());
+  }
+}
@@ -0,0 +1,72 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import jp.naist.sd.kenja.factextractor.GitTreeCreator;
+import jp.naist.sd.kenja.factextractor.ParseDaemon;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class ParseDaemonTest {
+
+  @Test
+  public void serveRequests() throws IOException {
+    // the second request starts with a byte order mark, which is not a part of the source code.
+    String requests = "a 10\nclass A {}b 26\n\ufeffclass B { void f() {} }";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new ParseDaemon(new GitTreeCreator(), new ByteArrayInputStream(
+        requests.getBytes(Charsets.UTF_8)), out, 1).serve();
+
+    String responses = new String(out.toByteArray(), Charsets.UTF_8);
+    int start = 0;
+    for (String id : new String[] {"a", "b"}) {
+      int end = responses.indexOf('\n', start);
+      String[] header = responses.substring(start, end).split(" ");
+      assertEquals(id, header[0]);
+      assertEquals("ok", header[1]);
+      start = end + 1 + Integer.parseInt(header[2]);
+      String body = responses.substring(end + 1, start);
+      assertTrue(body.contains("[TS] " + id.toUpperCase() + "\n"));
+    }
+    assertEquals(responses.length(), start);
+  }
+
+  @Test
+  public void warmUpWithoutMetrics() throws IOException {
+    GitTreeCreator creator = new GitTreeCreator();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new ParseDaemon(creator, new ByteArrayInputStream(new byte[0]), out, 2).serve();
+
+    assertEquals(0, out.size());
+    String json = creator.getMetrics().toJson(true);
+    assertTrue(json.contains("\"sources\":0,"));
+    assertTrue(json.contains("\"classes\":0,"));
+  }
+
+  @Test
+  public void countFailedResponses() throws IOException {
+    GitTreeCreator creator = new GitTreeCreator();
+    OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("closed by the client");
+      }
+    };
+    byte[] requests = "a 10\nclass A {}".getBytes(Charsets.UTF_8);
+    try {
+      new ParseDaemon(creator, new ByteArrayInputStream(requests), out, 1).serve();
+    } catch (IOException e) {
+      // the final flush fails as well.
+    }
+
+    assertTrue(creator.getMetrics().toJson(true).contains("\"failures\":1,"));
+  }
+}
@@ -0,0 +1,43 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import jp.naist.sd.kenja.factextractor.ParserProfile;
+import jp.naist.sd.kenja.factextractor.SourceParser;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+public class ParserProfileTest {
+
+  @Test
+  public void skipTopLevelEnum() {
+    SourceParser parser = new SourceParser(ParserProfile.forName(ParserProfile.JAVA7_NAME));
+    String src = "enum Color { RED }\n@interface Marker {}\nclass Sample { void run() {} }\n";
+
+    CompilationUnit unit = parser.parse(src.toCharArray(), false);
+    Tree classRoot = new ASTCompilation(unit, new Tree("")).getTree().getChild("[CN]");
+    assertTrue(classRoot.hasTree("Sample"));
+    assertFalse(classRoot.hasTree("Color"));
+    assertFalse(classRoot.hasTree("Marker"));
+  }
+
+  @Test
+  public void explicitDefaultOptions() {
+    ParserProfile profile = ParserProfile.forName(ParserProfile.DEFAULT_NAME);
+
+    Map<String, String> options = profile.getOptions();
+    assertEquals(JavaCore.VERSION_1_3, options.get(JavaCore.COMPILER_SOURCE));
+    assertEquals(JavaCore.VERSION_1_4, options.get(JavaCore.COMPILER_COMPLIANCE));
+    assertEquals(JavaCore.VERSION_1_2, options.get(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM));
+    assertEquals(JavaCore.ENABLED, options.get(JavaCore.COMPILER_DOC_COMMENT_SUPPORT));
+    assertFalse(profile.isStatementsRecovery());
+  }
+}
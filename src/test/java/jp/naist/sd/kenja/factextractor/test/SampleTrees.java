@@ -0,0 +1,50 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.SourceSlice;
+import jp.naist.sd.kenja.factextractor.Tree;
+
+/**
+ * Syntax trees of a class shared by tests, which are built as GitTreeCreator builds them.
+ */
+final class SampleTrees {
+  private SampleTrees() {
+  }
+
+  /**
+   * Create the syntax tree of class Sample which extends Base and has two methods.
+   *
+   * @param runBody
+   *          body of method run() without the last line separator
+   * @param otherMethod
+   *          name of the other method, whose body is empty
+   * @return root of the syntax tree
+   */
+  static Tree create(String runBody, String otherMethod) {
+    Tree root = new Tree("");
+    root.append(new Blob("jp.naist.sd\n", "package"));
+    Tree classRoot = new Tree("[CN]");
+    root.append(classRoot);
+    Tree clazz = new Tree("Sample");
+    classRoot.append(clazz);
+    clazz.append(new Blob("Base\n", "extend"));
+
+    Tree methodRoot = new Tree("[MT]");
+    clazz.append(methodRoot);
+    methodRoot.append(createMethod("run()", runBody));
+    methodRoot.append(createMethod(otherMethod, "{\n}"));
+    clazz.append(new Blob("caf\u00e9 \ud83d\ude00\n", "comment"));
+    return root;
+  }
+
+  private static Tree createMethod(String name, String body) {
+    Tree method = new Tree(name);
+    // a body is a slice of the source code which is followed by other members.
+    char[] source = (body + "\n\n  int y;\n").toCharArray();
+    Blob bodyBlob = new Blob("body");
+    bodyBlob.setBody(new SourceSlice(source, 0, body.length(), true));
+    method.append(bodyBlob);
+    method.append(new Blob("", "parameters"));
+    return method;
+  }
+}
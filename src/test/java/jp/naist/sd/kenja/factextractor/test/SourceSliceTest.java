@@ -0,0 +1,38 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+
+import jp.naist.sd.kenja.factextractor.SourceSlice;
+
+import org.junit.Test;
+
+public class SourceSliceTest {
+  private static final char[] SOURCE = "{\n  x();\n}\nint y;\n".toCharArray();
+
+  @Test
+  public void terminatedSlice() {
+    SourceSlice slice = new SourceSlice(SOURCE, 0, 10, true);
+
+    assertEquals("{\n  x();\n}\n", slice.toString());
+    assertEquals(11, slice.length());
+    assertEquals('\n', slice.charAt(10));
+  }
+
+  @Test
+  public void subSequence() {
+    SourceSlice slice = new SourceSlice(SOURCE, 0, 10, true);
+
+    assertEquals("x();", slice.subSequence(4, 8).toString());
+    assertEquals("}\n", slice.subSequence(9, 11).toString());
+    assertEquals("\n", slice.subSequence(10, 11).toString());
+    assertEquals("", slice.subSequence(10, 10).toString());
+    // an empty range at the end, as StringBuilder.append(CharSequence, start, end) may take.
+    assertEquals("", slice.subSequence(11, 11).toString());
+    assertEquals("", slice.subSequence(0, 0).toString());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void subSequenceOutOfSlice() {
+    new SourceSlice(SOURCE, 0, 10, true).subSequence(11, 12);
+  }
+}
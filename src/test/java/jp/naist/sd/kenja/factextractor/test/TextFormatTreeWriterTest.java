@@ -0,0 +1,103 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import jp.naist.sd.kenja.factextractor.TextFormatTreeWriter;
+import jp.naist.sd.kenja.factextractor.Tree;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class TextFormatTreeWriterTest {
+  /**
+   * the syntax tree of SampleTrees, whose entries are sorted by name.
+   */
+  private static final String EXPECTED = "[TS] [CN]\n"
+      + "[TS] Sample\n"
+      + "[TS] [MT]\n"
+      + "[TS] run()\n"
+      + "[BN] body\n"
+      + "[BI] 3\n"
+      + "{\n"
+      + "  x();\n"
+      + "}\n"
+      + "[BN] parameters\n"
+      + "[BI] 0\n"
+      + "[TE] run()\n"
+      + "[TS] stop()\n"
+      + "[BN] body\n"
+      + "[BI] 2\n"
+      + "{\n"
+      + "}\n"
+      + "[BN] parameters\n"
+      + "[BI] 0\n"
+      + "[TE] stop()\n"
+      + "[TE] [MT]\n"
+      + "[BN] comment\n"
+      + "[BI] 1\n"
+      + "caf? ?\n"
+      + "[BN] extend\n"
+      + "[BI] 1\n"
+      + "Base\n"
+      + "[TE] Sample\n"
+      + "[TE] [CN]\n"
+      + "[BN] package\n"
+      + "[BI] 1\n"
+      + "jp.naist.sd\n";
+
+  private File baseDir;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private Tree createTree() {
+    return SampleTrees.create("{\n  x();\n}", "stop()");
+  }
+
+  @Test
+  public void writeFile() throws IOException {
+    File file = new File(baseDir, "sub/tree");
+    TextFormatTreeWriter writer = new TextFormatTreeWriter(file);
+    writer.writeTree(createTree());
+
+    byte[] written = Files.toByteArray(file);
+    assertEquals(EXPECTED, new String(written, Charsets.US_ASCII));
+    // the non-ASCII chars of the comment are written as a byte each.
+    assertEquals(written.length, writer.getBytesWritten());
+  }
+
+  @Test
+  public void appendTrees() throws IOException {
+    File file = new File(baseDir, "tree");
+    new TextFormatTreeWriter(file).writeTree(createTree());
+    new TextFormatTreeWriter(file).writeTree(createTree());
+
+    assertEquals(EXPECTED + EXPECTED, Files.toString(file, Charsets.US_ASCII));
+  }
+
+  @Test
+  public void writeToWriter() throws IOException {
+    StringWriter target = new StringWriter();
+    TextFormatTreeWriter writer = new TextFormatTreeWriter(target);
+    writer.writeTree(createTree());
+
+    assertEquals(EXPECTED.replace("caf? ?", "caf\u00e9 \ud83d\ude00"), target.toString());
+    assertEquals(target.toString().length(), writer.getBytesWritten());
+  }
+}
@@ -0,0 +1,81 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jp.naist.sd.kenja.factextractor.FileFormatTreeWriter;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.TreeDiff;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class TreeDiffTest {
+  private File baseDir;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test
+  public void compare() {
+    Tree oldTree = SampleTrees.create("{\n}", "stop()");
+    Tree newTree = SampleTrees.create("{\n  x();\n}", "stop(int)");
+
+    List<TreeDiff.Change> changes = TreeDiff.compare(oldTree, newTree);
+    assertEquals(3, changes.size());
+    assertEquals("MODIFIED [CN]/Sample/[MT]/run()/body", changes.get(0).toString());
+    assertEquals("REMOVED [CN]/Sample/[MT]/stop()", changes.get(1).toString());
+    assertEquals("ADDED [CN]/Sample/[MT]/stop(int)", changes.get(2).toString());
+    assertTrue(changes.get(2).isTree());
+
+    assertTrue(TreeDiff.compare(oldTree, SampleTrees.create("{\n}", "stop()")).isEmpty());
+  }
+
+  @Test
+  public void compareNonAsciiBlobsWithIds() {
+    Tree oldTree = SampleTrees.create("{\n}", "stop()");
+    Tree newTree = SampleTrees.create("{\n}", "stop()");
+    Tree clazz = newTree.getChild("[CN]").getChild("Sample");
+    clazz.getBlob("comment").setBody("caf\u00e8 \ud83d\ude00\n");
+
+    // the comments differ only in non-ASCII chars, which are stored as '?'.
+    assertEquals(oldTree.getId(), newTree.getId());
+    assertFalse(newTree.hasExactId());
+    assertTrue(clazz.getChild("[MT]").hasExactId());
+
+    List<TreeDiff.Change> changes = TreeDiff.compare(oldTree, newTree);
+    assertEquals(1, changes.size());
+    assertEquals("MODIFIED [CN]/Sample/comment", changes.get(0).toString());
+  }
+
+  @Test
+  public void writeDelta() throws IOException {
+    Tree oldTree = SampleTrees.create("{\n}", "stop()");
+    Tree newTree = SampleTrees.create("{\n  x();\n}", "stop(int)");
+    new FileFormatTreeWriter(baseDir).writeTree(oldTree);
+    new FileFormatTreeWriter(baseDir).writeDelta(oldTree, newTree);
+
+    File methodDir = new File(baseDir, "[CN]/Sample/[MT]");
+    assertEquals("{\n  x();\n}\n", Files.toString(new File(methodDir, "run()/body"),
+        Charsets.US_ASCII));
+    assertFalse(new File(methodDir, "stop()").exists());
+    assertTrue(new File(methodDir, "stop(int)/body").isFile());
+  }
+}
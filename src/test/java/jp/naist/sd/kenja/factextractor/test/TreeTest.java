@@ -0,0 +1,85 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.naist.sd.kenja.factextractor.Blob;
+import jp.naist.sd.kenja.factextractor.ParserProfile;
+import jp.naist.sd.kenja.factextractor.SourceParser;
+import jp.naist.sd.kenja.factextractor.Tree;
+import jp.naist.sd.kenja.factextractor.TreeEntry;
+import jp.naist.sd.kenja.factextractor.ast.ASTCompilation;
+
+import org.junit.Test;
+
+public class TreeTest {
+
+  private List<String> getSortedNames(Tree tree) {
+    List<String> names = new ArrayList<String>();
+    for (TreeEntry entry : tree.getSortedEntries()) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void renameConflictingTrees() {
+    Tree methodRoot = new Tree("[MT]");
+    Tree first = new Tree("run()");
+    Tree second = new Tree("run()");
+    methodRoot.append(first);
+    methodRoot.append(second);
+    methodRoot.append(new Tree("stop()"));
+    assertSame(first, methodRoot.getChild("run()"));
+    assertEquals("[run(), run(), stop()]", getSortedNames(methodRoot).toString());
+
+    // while only the first one is renamed, the name still refers to the second one.
+    first.setName("run().conflicted0");
+    assertSame(second, methodRoot.getChild("run()"));
+    second.setName("run().conflicted1");
+
+    assertFalse(methodRoot.hasTree("run()"));
+    assertNull(methodRoot.getChild("run()"));
+    assertSame(first, methodRoot.getChild("run().conflicted0"));
+    assertSame(second, methodRoot.getChild("run().conflicted1"));
+    assertTrue(methodRoot.has("stop()"));
+    assertEquals("[run().conflicted0, run().conflicted1, stop()]",
+        getSortedNames(methodRoot).toString());
+  }
+
+  @Test
+  public void renameBlob() {
+    Tree fieldRoot = new Tree("[FE]");
+    Blob blob = new Blob("int\n", "x");
+    fieldRoot.append(blob);
+    fieldRoot.append(new Blob("int\n", "a"));
+
+    blob.setName("y");
+    assertFalse(fieldRoot.hasBlob("x"));
+    assertFalse(fieldRoot.has("x"));
+    assertSame(blob, fieldRoot.getBlob("y"));
+    assertEquals("[a, y]", getSortedNames(fieldRoot).toString());
+  }
+
+  @Test
+  public void renameConflictingMethods() {
+    // the same signature twice, which does not compile but is parsed.
+    char[] src = "class Sample {\n  void run() {}\n  void run() {}\n  void stop() {}\n}\n"
+        .toCharArray();
+    SourceParser parser = new SourceParser(ParserProfile.forName(ParserProfile.DEFAULT_NAME));
+    Tree root = new ASTCompilation(parser.parse(src, false), new Tree("")).getTree();
+
+    Tree methodRoot = root.getChild("[CN]").getChild("Sample").getChild("[MT]");
+    assertFalse(methodRoot.hasTree("run()"));
+    assertTrue(methodRoot.hasTree("run().conflicted0"));
+    assertTrue(methodRoot.hasTree("run().conflicted1"));
+    assertEquals("[run().conflicted0, run().conflicted1, stop()]",
+        getSortedNames(methodRoot).toString());
+  }
+}
@@ -0,0 +1,109 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jp.naist.sd.kenja.factextractor.GitTreeCreator;
+import jp.naist.sd.kenja.factextractor.TextFileOutput;
+import jp.naist.sd.kenja.factextractor.WorkingTreeExtractor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class WorkingTreeExtractorTest {
+  private static final int NUM_FILES = 12;
+
+  private File baseDir;
+
+  private File workingTree;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    workingTree = new File(baseDir, "work");
+    for (int i = 0; i < NUM_FILES; i++) {
+      String src = "package p" + i + ";\nclass C" + i + " {\n  void m(int a) {\n    call(a);\n"
+          + "  }\n}\n";
+      File file = new File(workingTree, "src/p" + (i % 3) + "/C" + i + ".java");
+      Files.createParentDirs(file);
+      Files.write(src, file, Charsets.US_ASCII);
+    }
+    Files.write("not source code\n", new File(workingTree, "src/README.txt"), Charsets.US_ASCII);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private Map<String, String> extract(int numThreads) throws IOException {
+    File syntaxTreeDir = new File(baseDir, "threads" + numThreads);
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(new GitTreeCreator(), workingTree,
+        new TextFileOutput(syntaxTreeDir), numThreads);
+    extractor.extract();
+
+    Map<String, String> trees = new TreeMap<String, String>();
+    for (File file : FileUtils.listFiles(syntaxTreeDir, null, true)) {
+      String name = file.getPath().substring(syntaxTreeDir.getPath().length() + 1);
+      trees.put(name.replace(File.separatorChar, '/'), Files.toString(file, Charsets.US_ASCII));
+    }
+    return trees;
+  }
+
+  @Test
+  public void mirrorLayout() throws IOException {
+    Map<String, String> trees = extract(1);
+
+    assertEquals(NUM_FILES, trees.size());
+    assertTrue(trees.containsKey("src/p0/C0.java"));
+    assertTrue(trees.containsKey("src/p2/C11.java"));
+    assertFalse(trees.containsKey("src/README.txt"));
+    assertTrue(trees.get("src/p1/C4.java").contains("[TS] C4\n"));
+  }
+
+  @Test
+  public void sameOutputWithThreads() throws IOException {
+    assertEquals(extract(1), extract(4));
+  }
+
+  @Test
+  public void extractFile() throws IOException {
+    File syntaxTreeDir = new File(baseDir, "trees");
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(new GitTreeCreator(), workingTree,
+        new TextFileOutput(syntaxTreeDir), 1);
+
+    File file = new File(workingTree, "src/p0/C3.java");
+    assertTrue(extractor.extract(file));
+    assertTrue(new File(syntaxTreeDir, "src/p0/C3.java").isFile());
+    // a file which can not be read is counted as a failure.
+    assertFalse(extractor.extract(new File(workingTree, "src/p0/Missing.java")));
+  }
+
+  @Test
+  public void nameRelativeToWorkingTree() {
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(new GitTreeCreator(),
+        new File(workingTree, "src/../src"), new TextFileOutput(new File(baseDir, "trees")), 1);
+
+    assertEquals("p1/C1.java", extractor.getName(new File(workingTree, "src/../src/p1/C1.java")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nameOutsideWorkingTree() {
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(new GitTreeCreator(), workingTree,
+        new TextFileOutput(new File(baseDir, "trees")), 1);
+
+    // a sibling directory whose name starts with the name of the working tree.
+    extractor.getName(new File(baseDir, "work2/C.java"));
+  }
+}
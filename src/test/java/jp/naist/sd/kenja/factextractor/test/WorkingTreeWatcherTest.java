@@ -0,0 +1,203 @@
+package jp.naist.sd.kenja.factextractor.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import jp.naist.sd.kenja.factextractor.DirectoryOutput;
+import jp.naist.sd.kenja.factextractor.GitTreeCreator;
+import jp.naist.sd.kenja.factextractor.SyntaxTreeOutput;
+import jp.naist.sd.kenja.factextractor.TextFileOutput;
+import jp.naist.sd.kenja.factextractor.WorkingTreeExtractor;
+import jp.naist.sd.kenja.factextractor.WorkingTreeWatcher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class WorkingTreeWatcherTest {
+  private static final long TIMEOUT = 10000;
+
+  private File baseDir;
+
+  private File workingTree;
+
+  private File syntaxTreeDir;
+
+  private ByteArrayOutputStream report;
+
+  private Thread watcherThread;
+
+  private volatile Exception failure;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDir();
+    workingTree = new File(baseDir, "work");
+    syntaxTreeDir = new File(baseDir, "trees");
+    writeSource("src/p/A.java", "A");
+    writeSource("src/q/B.java", "B");
+    writeSource("src/q/r/C.java", "C");
+    report = new ByteArrayOutputStream();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (watcherThread != null) {
+      watcherThread.interrupt();
+      watcherThread.join(TIMEOUT);
+      assertFalse(watcherThread.isAlive());
+    }
+    FileUtils.deleteDirectory(baseDir);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private File writeSource(String name, String className) throws IOException {
+    File file = new File(workingTree, name);
+    Files.createParentDirs(file);
+    Files.write("class " + className + " {\n  void run() {}\n}\n", file, Charsets.US_ASCII);
+    return file;
+  }
+
+  private void startWatcher() {
+    startWatcher(new TextFileOutput(syntaxTreeDir));
+  }
+
+  private void startWatcher(SyntaxTreeOutput output) {
+    WorkingTreeExtractor extractor = new WorkingTreeExtractor(new GitTreeCreator(), workingTree,
+        output, 1);
+    final WorkingTreeWatcher watcher = new WorkingTreeWatcher(extractor, workingTree,
+        syntaxTreeDir, new PrintStream(report, true), 20, 20);
+    watcherThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          watcher.watch();
+        } catch (Exception e) {
+          failure = e;
+        }
+      }
+    });
+    watcherThread.start();
+  }
+
+  /**
+   * Wait until a line is reported by the watcher.
+   */
+  private void waitForReport(String line) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!report.toString().contains(line + "\n")) {
+      if (System.currentTimeMillis() > deadline) {
+        fail(line + " is not reported: " + report);
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private void waitForFile(File file) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!file.isFile()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail(file + " is not written");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Wait until a file or a directory is deleted, which may be just after it is reported.
+   */
+  private void waitForDeletion(File file) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (file.exists()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail(file + " is not deleted");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void updateModifiedFile() throws Exception {
+    startWatcher();
+    File syntaxTree = new File(syntaxTreeDir, "src/p/A.java");
+    waitForFile(new File(syntaxTreeDir, "src/q/r/C.java"));
+    waitForFile(syntaxTree);
+    assertEquals("", report.toString());
+
+    File file = writeSource("src/p/A.java", "Renamed");
+    // modification times may be as coarse as a second.
+    assertTrue(file.setLastModified(file.lastModified() + 2000));
+    waitForReport("M src/p/A.java");
+
+    assertTrue(Files.toString(syntaxTree, Charsets.US_ASCII).contains("[TS] Renamed\n"));
+    assertEquals("M src/p/A.java\n", report.toString());
+  }
+
+  @Test
+  public void updateCreatedAndDeletedFiles() throws Exception {
+    startWatcher();
+    waitForFile(new File(syntaxTreeDir, "src/p/A.java"));
+
+    writeSource("src/p/D.java", "D");
+    waitForReport("M src/p/D.java");
+    assertTrue(new File(syntaxTreeDir, "src/p/D.java").isFile());
+
+    assertTrue(new File(workingTree, "src/p/A.java").delete());
+    waitForReport("D src/p/A.java");
+    waitForDeletion(new File(syntaxTreeDir, "src/p/A.java"));
+  }
+
+  @Test
+  public void removeDeletedDirectory() throws Exception {
+    startWatcher();
+    waitForFile(new File(syntaxTreeDir, "src/q/r/C.java"));
+    waitForFile(new File(syntaxTreeDir, "src/q/B.java"));
+
+    FileUtils.deleteDirectory(new File(workingTree, "src/q"));
+    waitForReport("D src/q/B.java");
+    waitForReport("D src/q/r/C.java");
+
+    // the directory is removed after all syntax trees in it.
+    waitForDeletion(new File(syntaxTreeDir, "src/q"));
+    assertTrue(new File(syntaxTreeDir, "src/p/A.java").isFile());
+    assertNull(failure);
+  }
+
+  @Test
+  public void updateDirectoryOutput() throws Exception {
+    startWatcher(new DirectoryOutput(syntaxTreeDir));
+    File classDir = new File(syntaxTreeDir, "src/p/A.java/[CN]/A");
+    waitForFile(new File(syntaxTreeDir, "src/q/r/C.java/[CN]/C/[MT]/run()/body"));
+    waitForFile(new File(classDir, "[MT]/run()/body"));
+
+    File file = new File(workingTree, "src/p/A.java");
+    Files.write("class A {\n  void stop() {}\n}\n", file, Charsets.US_ASCII);
+    assertTrue(file.setLastModified(file.lastModified() + 2000));
+    waitForReport("M src/p/A.java");
+    assertTrue(new File(classDir, "[MT]/stop()/body").isFile());
+    assertFalse(new File(classDir, "[MT]/run()").exists());
+
+    // the syntax tree of a deleted file is a directory, and that of a deleted directory is in it.
+    assertTrue(file.delete());
+    waitForReport("D src/p/A.java");
+    FileUtils.deleteDirectory(new File(workingTree, "src/q"));
+    waitForReport("D src/q/B.java");
+    waitForReport("D src/q/r/C.java");
+    waitForDeletion(new File(syntaxTreeDir, "src/q"));
+    assertFalse(new File(syntaxTreeDir, "src/p/A.java").exists());
+  }
+}